@@ -32,7 +32,9 @@ public interface Action {
 	 *
 	 * @param output
 	 *            The output for the action
+	 * @throws ActionException
+	 *             if the action could not be performed
 	 */
-	void execute(Output output);
+	void execute(Output output) throws ActionException;
 
 }
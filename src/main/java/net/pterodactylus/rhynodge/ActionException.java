@@ -0,0 +1,105 @@
+/*
+ * Rhynodge - ActionException.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge;
+
+/**
+ * Exception that signals that an {@link Action} could not be performed. A
+ * permanent failure signals that performing the action again will fail
+ * again, e. g. because the recipient of an email does not exist.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ActionException extends Exception {
+
+	/** Whether the failure is permanent. */
+	private final boolean permanent;
+
+	/**
+	 * Creates a new action exception.
+	 */
+	public ActionException() {
+		super();
+		permanent = false;
+	}
+
+	/**
+	 * Creates a new action exception.
+	 *
+	 * @param message
+	 *            The message of the exception
+	 */
+	public ActionException(String message) {
+		super(message);
+		permanent = false;
+	}
+
+	/**
+	 * Creates a new action exception.
+	 *
+	 * @param throwable
+	 *            The root cause
+	 */
+	public ActionException(Throwable throwable) {
+		super(throwable);
+		permanent = false;
+	}
+
+	/**
+	 * Creates a new action exception.
+	 *
+	 * @param message
+	 *            The message of the exception
+	 * @param throwable
+	 *            The root cause
+	 */
+	public ActionException(String message, Throwable throwable) {
+		this(message, throwable, false);
+	}
+
+	/**
+	 * Creates a new action exception.
+	 *
+	 * @param message
+	 *            The message of the exception
+	 * @param throwable
+	 *            The root cause
+	 * @param permanent
+	 *            {@code true} if the failure is permanent, {@code false}
+	 *            otherwise
+	 */
+	public ActionException(String message, Throwable throwable, boolean permanent) {
+		super(message, throwable);
+		this.permanent = permanent;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether the failure is permanent, i.e. whether performing the
+	 * action again will fail again.
+	 *
+	 * @return {@code true} if the failure is permanent, {@code false}
+	 *         otherwise
+	 */
+	public boolean permanent() {
+		return permanent;
+	}
+
+}
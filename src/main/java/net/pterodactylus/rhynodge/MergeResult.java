@@ -0,0 +1,105 @@
+/*
+ * Rhynodge - MergeResult.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge;
+
+import net.pterodactylus.rhynodge.output.Output;
+
+import com.google.common.base.Function;
+
+/**
+ * The immutable result of merging two {@link State}s with a
+ * {@link StatelessTrigger}: the merged state, whether the trigger was hit, and
+ * the output of the trigger. The output is only rendered when it is requested.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public final class MergeResult {
+
+	/** The merged state. */
+	private final State state;
+
+	/** Whether the trigger was hit. */
+	private final boolean triggered;
+
+	/** Renders the output for a reaction. */
+	private final Function<? super Reaction, ? extends Output> outputRenderer;
+
+	/**
+	 * Creates a new merge result.
+	 *
+	 * @param state
+	 *            The merged state
+	 * @param triggered
+	 *            {@code true} if the trigger was hit, {@code false} otherwise
+	 * @param outputRenderer
+	 *            Function that renders the output for a reaction; it must only
+	 *            use values that do not change anymore
+	 */
+	public MergeResult(State state, boolean triggered, Function<? super Reaction, ? extends Output> outputRenderer) {
+		this.state = state;
+		this.triggered = triggered;
+		this.outputRenderer = outputRenderer;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the merged state.
+	 *
+	 * @return The merged state
+	 */
+	public State state() {
+		return state;
+	}
+
+	/**
+	 * Returns whether the trigger was hit.
+	 *
+	 * @return {@code true} if the trigger was hit, {@code false} otherwise
+	 */
+	public boolean triggered() {
+		return triggered;
+	}
+
+	/**
+	 * Renders the output of the trigger. This will only return a meaningful
+	 * value if {@link #triggered()} returns {@code true}.
+	 *
+	 * @param reaction
+	 *            The reaction being triggered
+	 * @return The output of the trigger
+	 */
+	public Output output(Reaction reaction) {
+		return outputRenderer.apply(reaction);
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s[state=%s,triggered=%s]", getClass().getSimpleName(), state, triggered);
+	}
+
+}
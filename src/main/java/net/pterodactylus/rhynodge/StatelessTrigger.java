@@ -0,0 +1,47 @@
+/*
+ * Rhynodge - StatelessTrigger.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge;
+
+import net.pterodactylus.rhynodge.triggers.SynchronizedTrigger;
+
+/**
+ * A trigger that does not keep any results between runs: everything a run
+ * produces is returned in a {@link MergeResult}. Implementations have to be
+ * safe to use from multiple threads at the same time, so that the same
+ * reaction can be run concurrently, and the output of one run can be rendered
+ * while the next run is already merging.
+ * <p>
+ * {@link Trigger}s that do not implement this interface can be used via
+ * {@link SynchronizedTrigger}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public interface StatelessTrigger {
+
+	/**
+	 * Merges the current state into the previous state.
+	 *
+	 * @param previousState
+	 *            The previous state of the system
+	 * @param currentState
+	 *            The current state of a system
+	 * @return The result of the merge
+	 */
+	MergeResult merge(State previousState, State currentState);
+
+}
@@ -25,6 +25,11 @@ import net.pterodactylus.rhynodge.states.FileState;
  * trigger. For example, two {@link FileState}s might contain different file
  * sizes but a trigger might only care about whether the file appeared or
  * disappeared since the last check.
+ * <p>
+ * A trigger keeps the results of {@link #mergeStates(State, State)} until
+ * {@link #triggers()} and {@link #output(Reaction)} are called, so it can not
+ * be used by more than one thread at a time. New triggers should implement
+ * {@link StatelessTrigger} instead.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
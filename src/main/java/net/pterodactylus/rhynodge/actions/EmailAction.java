@@ -17,23 +17,27 @@
 
 package net.pterodactylus.rhynodge.actions;
 
-import java.util.Properties;
-
 import javax.mail.Message.RecipientType;
 import javax.mail.MessagingException;
-import javax.mail.Session;
-import javax.mail.Transport;
+import javax.mail.SendFailedException;
+import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
 
 import net.pterodactylus.rhynodge.Action;
+import net.pterodactylus.rhynodge.ActionException;
 import net.pterodactylus.rhynodge.output.Output;
 
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPSenderFailedException;
+
 /**
  * {@link Action} implementation that sends an email containing the triggering
- * object to an email address.
+ * object to an email address. Connections to the SMTP server are shared by all
+ * email actions using the same server, see {@link SmtpTransportPool}.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
@@ -48,6 +52,9 @@ public class EmailAction implements Action {
 	/** The email address of the recipient. */
 	private final String recipient;
 
+	/** The connections to the SMTP server. */
+	private final SmtpTransportPool transportPool;
+
 	/**
 	 * Creates a new email action.
 	 *
@@ -62,6 +69,7 @@ public class EmailAction implements Action {
 		this.hostname = hostname;
 		this.sender = sender;
 		this.recipient = recipient;
+		this.transportPool = SmtpTransportPool.forHost(hostname);
 	}
 
 	//
@@ -72,11 +80,8 @@ public class EmailAction implements Action {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void execute(Output output) {
-		Properties properties = System.getProperties();
-		properties.put("mail.smtp.host", hostname);
-		Session session = Session.getInstance(properties);
-		MimeMessage message = new MimeMessage(session);
+	public void execute(Output output) throws ActionException {
+		MimeMessage message = new MimeMessage(transportPool.session());
 		try {
 			/* create message. */
 			message.setFrom(new InternetAddress(sender));
@@ -94,10 +99,86 @@ public class EmailAction implements Action {
 			multipart.addBodyPart(htmlPart);
 			message.setContent(multipart);
 
-			Transport.send(message);
+			message.saveChanges();
+			transportPool.send(message);
 		} catch (MessagingException me1) {
-			/* swallow. */
+			throw new ActionException(String.format("Could not send email to %s via %s.", recipient, hostname), me1, isRejection(me1));
+		}
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		int hashCode = 0;
+		hashCode ^= hostname.hashCode();
+		hashCode ^= sender.hashCode();
+		hashCode ^= recipient.hashCode();
+		return hashCode;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof EmailAction)) {
+			return false;
+		}
+		EmailAction emailAction = (EmailAction) object;
+		if (!hostname.equals(emailAction.hostname)) {
+			return false;
+		}
+		if (!sender.equals(emailAction.sender)) {
+			return false;
+		}
+		if (!recipient.equals(emailAction.recipient)) {
+			return false;
+		}
+		return true;
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns whether the given exception signals that the message has been
+	 * rejected, i.e. that sending it again will fail again. Invalid addresses
+	 * and messages refused by the server are rejected, unless the server only
+	 * refused them temporarily (SMTP reply code 4xx).
+	 *
+	 * @param messagingException
+	 *            The exception to check
+	 * @return {@code true} if the message has been rejected, {@code false}
+	 *         otherwise
+	 */
+	private static boolean isRejection(MessagingException messagingException) {
+		if (messagingException instanceof AddressException) {
+			return true;
+		}
+		if (!(messagingException instanceof SendFailedException)) {
+			return false;
+		}
+		for (Exception exception = messagingException; exception != null; exception = (exception instanceof MessagingException) ? ((MessagingException) exception).getNextException() : null) {
+			int returnCode = -1;
+			if (exception instanceof SMTPSendFailedException) {
+				returnCode = ((SMTPSendFailedException) exception).getReturnCode();
+			} else if (exception instanceof SMTPAddressFailedException) {
+				returnCode = ((SMTPAddressFailedException) exception).getReturnCode();
+			} else if (exception instanceof SMTPSenderFailedException) {
+				returnCode = ((SMTPSenderFailedException) exception).getReturnCode();
+			}
+			if ((returnCode / 100) == 4) {
+				return false;
+			}
 		}
+		return true;
 	}
 
 }
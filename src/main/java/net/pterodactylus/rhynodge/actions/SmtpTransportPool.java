@@ -0,0 +1,295 @@
+/*
+ * Rhynodge - SmtpTransportPool.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.actions;
+
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Queues;
+
+/**
+ * Keeps connections to an SMTP server open so that they can be reused for
+ * more than one message. There is exactly one pool per SMTP server, shared by
+ * all {@link EmailAction}s that use that server.
+ * <p>
+ * A connection that has been idle for too long is closed before it is used
+ * again. If sending a message over a reused connection fails, the message is
+ * sent once more over a new connection, as the server might simply have
+ * closed the old one; a message that was rejected by the server is not sent
+ * again but fails with the {@link SendFailedException} of the server. All
+ * pools are closed by {@link #closeAll()}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SmtpTransportPool {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(SmtpTransportPool.class);
+
+	/** The maximum number of idle connections to keep open per server. */
+	private static final int MAX_IDLE_TRANSPORTS = 2;
+
+	/** The time after which an idle connection is closed (in milliseconds). */
+	private static final long MAX_IDLE_TIME = TimeUnit.SECONDS.toMillis(60);
+
+	/** The timeout for connecting to and reading from the server. */
+	private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+
+	/** The pools of all servers, by hostname. */
+	private static final ConcurrentMap<String, SmtpTransportPool> transportPools = new ConcurrentHashMap<String, SmtpTransportPool>();
+
+	/** The session of the server. */
+	private final Session session;
+
+	/** The idle connections, most recently used first. */
+	/* synchronize on itself. */
+	private final Deque<IdleTransport> idleTransports = Queues.newArrayDeque();
+
+	/**
+	 * Creates a new transport pool.
+	 *
+	 * @param hostname
+	 *            The hostname of the SMTP server
+	 */
+	private SmtpTransportPool(String hostname) {
+		Properties properties = new Properties();
+		properties.put("mail.smtp.host", hostname);
+		properties.put("mail.smtp.connectiontimeout", String.valueOf(TIMEOUT));
+		properties.put("mail.smtp.timeout", String.valueOf(TIMEOUT));
+		session = Session.getInstance(properties);
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns the transport pool for the given SMTP server.
+	 *
+	 * @param hostname
+	 *            The hostname of the SMTP server
+	 * @return The transport pool for the server
+	 */
+	public static SmtpTransportPool forHost(String hostname) {
+		SmtpTransportPool transportPool = transportPools.get(hostname);
+		if (transportPool == null) {
+			transportPool = new SmtpTransportPool(hostname);
+			SmtpTransportPool existingTransportPool = transportPools.putIfAbsent(hostname, transportPool);
+			if (existingTransportPool != null) {
+				transportPool = existingTransportPool;
+			}
+		}
+		return transportPool;
+	}
+
+	/**
+	 * Closes the idle connections of all pools.
+	 */
+	public static void closeAll() {
+		for (SmtpTransportPool transportPool : transportPools.values()) {
+			transportPool.close();
+		}
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the session of the SMTP server. Messages sent by this pool
+	 * should be created using this session.
+	 *
+	 * @return The session of the SMTP server
+	 */
+	public Session session() {
+		return session;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Sends the given message to all of its recipients.
+	 *
+	 * @param message
+	 *            The message to send
+	 * @throws MessagingException
+	 *             if the message can not be sent
+	 */
+	public void send(Message message) throws MessagingException {
+		Transport transport = takeIdleTransport();
+		if (transport != null) {
+			try {
+				transport.sendMessage(message, message.getAllRecipients());
+				returnTransport(transport);
+				return;
+			} catch (SendFailedException sfe1) {
+				/* the server rejected the message, sending it again will not help. */
+				returnTransport(transport);
+				throw sfe1;
+			} catch (MessagingException me1) {
+				logger.debug("Could not send message over reused connection, reconnecting.", me1);
+				closeTransport(transport);
+			}
+		}
+		transport = session.getTransport("smtp");
+		transport.connect();
+		try {
+			transport.sendMessage(message, message.getAllRecipients());
+		} catch (SendFailedException sfe1) {
+			returnTransport(transport);
+			throw sfe1;
+		} catch (MessagingException me1) {
+			closeTransport(transport);
+			throw me1;
+		}
+		returnTransport(transport);
+	}
+
+	/**
+	 * Closes all idle connections.
+	 */
+	public void close() {
+		while (true) {
+			IdleTransport idleTransport;
+			synchronized (idleTransports) {
+				idleTransport = idleTransports.pollFirst();
+			}
+			if (idleTransport == null) {
+				break;
+			}
+			closeTransport(idleTransport.transport());
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns an idle connection that is still open. Connections that have
+	 * been idle for too long or that have been closed are closed and
+	 * discarded.
+	 *
+	 * @return An open connection, or {@code null} if there is no idle
+	 *         connection
+	 */
+	private Transport takeIdleTransport() {
+		while (true) {
+			IdleTransport idleTransport;
+			synchronized (idleTransports) {
+				idleTransport = idleTransports.pollFirst();
+			}
+			if (idleTransport == null) {
+				return null;
+			}
+			if (((System.currentTimeMillis() - idleTransport.idleSince()) < MAX_IDLE_TIME) && idleTransport.transport().isConnected()) {
+				return idleTransport.transport();
+			}
+			closeTransport(idleTransport.transport());
+		}
+	}
+
+	/**
+	 * Returns the given connection to the pool, or closes it if the pool
+	 * already holds enough idle connections.
+	 *
+	 * @param transport
+	 *            The connection to return
+	 */
+	private void returnTransport(Transport transport) {
+		synchronized (idleTransports) {
+			if (idleTransports.size() < MAX_IDLE_TRANSPORTS) {
+				idleTransports.addFirst(new IdleTransport(transport));
+				return;
+			}
+		}
+		closeTransport(transport);
+	}
+
+	/**
+	 * Closes the given connection, ignoring any errors.
+	 *
+	 * @param transport
+	 *            The connection to close
+	 */
+	private static void closeTransport(Transport transport) {
+		try {
+			transport.close();
+		} catch (MessagingException me1) {
+			logger.debug("Could not close connection.", me1);
+		}
+	}
+
+	/**
+	 * A connection and the time it became idle.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class IdleTransport {
+
+		/** The connection. */
+		private final Transport transport;
+
+		/** The time the connection became idle. */
+		private final long idleSince = System.currentTimeMillis();
+
+		/**
+		 * Creates a new idle connection.
+		 *
+		 * @param transport
+		 *            The connection
+		 */
+		public IdleTransport(Transport transport) {
+			this.transport = transport;
+		}
+
+		/**
+		 * Returns the connection.
+		 *
+		 * @return The connection
+		 */
+		public Transport transport() {
+			return transport;
+		}
+
+		/**
+		 * Returns the time the connection became idle.
+		 *
+		 * @return The time the connection became idle (in milliseconds since
+		 *         the epoch)
+		 */
+		public long idleSince() {
+			return idleSince;
+		}
+
+	}
+
+}
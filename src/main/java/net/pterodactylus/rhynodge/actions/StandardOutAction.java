@@ -36,4 +36,24 @@ public class StandardOutAction implements Action {
 		System.out.println(String.format("Triggered by %s.", output.text("text/plain", -1)));
 	}
 
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return StandardOutAction.class.hashCode();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object object) {
+		return object instanceof StandardOutAction;
+	}
+
 }
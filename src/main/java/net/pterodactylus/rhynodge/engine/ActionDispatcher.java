@@ -0,0 +1,825 @@
+/*
+ * Rhynodge - ActionDispatcher.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.engine;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pterodactylus.rhynodge.Action;
+import net.pterodactylus.rhynodge.ActionException;
+import net.pterodactylus.rhynodge.actions.SmtpTransportPool;
+import net.pterodactylus.rhynodge.output.DefaultOutput;
+import net.pterodactylus.rhynodge.output.DigestOutput;
+import net.pterodactylus.rhynodge.output.Output;
+import net.pterodactylus.rhynodge.states.StateFileWriter;
+import net.pterodactylus.rhynodge.states.StateFileWriter.Durability;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Executes {@link Action}s on a pool of threads of its own so that slow
+ * actions do not delay running reactions.
+ * <p>
+ * At most a fixed number of outputs can wait for their delivery; once that
+ * number is reached, {@link #dispatch(String, Action, Output)} blocks until an
+ * output has been delivered. An action that fails with an
+ * {@link ActionException} or any other exception is retried with an
+ * exponentially growing delay until it succeeds or the maximum number of
+ * attempts has been made. An action that fails with a
+ * {@link ActionException#permanent() permanent} failure, e. g. an email that
+ * has been rejected by the server, is not retried.
+ * <p>
+ * If an outbox directory is given, every output is stored there until it has
+ * been delivered. Outputs that were not delivered before a restart are loaded
+ * when the dispatcher is created and are dispatched again as soon as the
+ * action of their reaction is known again, i.e. when
+ * {@link #resume(String, Action)} is called for the reaction. Outputs of
+ * reactions that do not exist anymore are removed from the outbox by
+ * {@link #discardUndeliveredOutputs(Collection)}.
+ * <p>
+ * If a digest window is given, outputs are not delivered right away. Instead,
+ * all outputs for {@link Object#equals(Object) equal} actions (e. g. emails to
+ * the same recipient) that are dispatched within the window are combined into
+ * a single {@link DigestOutput} which is then delivered once. A digest is
+ * delivered early if it reaches the maximum digest size.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ActionDispatcher {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(ActionDispatcher.class);
+
+	/** The default number of actions to execute in parallel. */
+	public static final int DEFAULT_THREAD_COUNT = 2;
+
+	/** The default number of outputs that can wait for their delivery. */
+	public static final int DEFAULT_CAPACITY = 100;
+
+	/** The default delay before the first retry (in milliseconds). */
+	public static final long DEFAULT_INITIAL_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+	/** The default maximum delay between two retries (in milliseconds). */
+	public static final long DEFAULT_MAX_RETRY_DELAY = TimeUnit.HOURS.toMillis(1);
+
+	/** The default maximum number of attempts to deliver an output. */
+	public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+	/** The default digest window (in milliseconds); no digests are made. */
+	public static final long DEFAULT_DIGEST_WINDOW = 0;
+
+	/** The default maximum number of outputs in a digest; no limit. */
+	public static final int DEFAULT_MAX_DIGEST_SIZE = 0;
+
+	/** The suffix of outbox files. */
+	private static final String OUTBOX_FILE_SUFFIX = ".output.json";
+
+	/** The MIME types of an output that are delivered. */
+	private static final String[] MIME_TYPES = { "text/plain", "text/html" };
+
+	/** The object mapper for outbox files. */
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	/** The executor for the actions. */
+	private final ScheduledExecutorService actionExecutor;
+
+	/** The permits for outputs waiting for delivery. */
+	private final Semaphore capacity;
+
+	/** The directory to store undelivered outputs in. */
+	private final Path outboxDirectory;
+
+	/** The writer for outbox files. */
+	private final StateFileWriter outboxFileWriter;
+
+	/** The delay before the first retry (in milliseconds). */
+	private final long initialRetryDelay;
+
+	/** The maximum delay between two retries (in milliseconds). */
+	private final long maxRetryDelay;
+
+	/** The maximum number of attempts to deliver an output. */
+	private final int maxAttempts;
+
+	/**
+	 * The time outputs are collected for a digest (in milliseconds), or
+	 * {@code 0} to deliver every output on its own.
+	 */
+	private final long digestWindow;
+
+	/** The maximum number of outputs in a digest, or {@code 0} for no limit. */
+	private final int maxDigestSize;
+
+	/** The counter for the names of outbox files. */
+	private final AtomicLong deliveryCounter = new AtomicLong(System.currentTimeMillis());
+
+	/** Undelivered outputs from a previous run, by reaction name. */
+	/* synchronize on itself. */
+	private final Map<String, List<Delivery>> undeliveredOutputs = Maps.newHashMap();
+
+	/** The deliveries collected for a digest, by action. */
+	/* synchronize on itself. */
+	private final Map<Action, List<Delivery>> pendingDigests = Maps.newHashMap();
+
+	/**
+	 * Creates a new action dispatcher that does not store undelivered outputs.
+	 */
+	public ActionDispatcher() {
+		this(DEFAULT_THREAD_COUNT, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new action dispatcher that does not store undelivered outputs.
+	 *
+	 * @param threadCount
+	 *            The number of actions to execute in parallel
+	 * @param capacity
+	 *            The number of outputs that can wait for their delivery
+	 */
+	public ActionDispatcher(int threadCount, int capacity) {
+		this(null, Durability.NONE, threadCount, capacity, DEFAULT_INITIAL_RETRY_DELAY, DEFAULT_MAX_RETRY_DELAY, DEFAULT_MAX_ATTEMPTS);
+	}
+
+	/**
+	 * Creates a new action dispatcher.
+	 *
+	 * @param outboxDirectory
+	 *            The directory to store undelivered outputs in (may be
+	 *            {@code null} to not store undelivered outputs)
+	 * @param durability
+	 *            The durability of the outbox files
+	 * @param threadCount
+	 *            The number of actions to execute in parallel
+	 * @param capacity
+	 *            The number of outputs that can wait for their delivery
+	 * @param initialRetryDelay
+	 *            The delay before the first retry (in milliseconds)
+	 * @param maxRetryDelay
+	 *            The maximum delay between two retries (in milliseconds)
+	 * @param maxAttempts
+	 *            The maximum number of attempts to deliver an output
+	 */
+	public ActionDispatcher(Path outboxDirectory, Durability durability, int threadCount, int capacity, long initialRetryDelay, long maxRetryDelay, int maxAttempts) {
+		this(outboxDirectory, durability, threadCount, capacity, initialRetryDelay, maxRetryDelay, maxAttempts, DEFAULT_DIGEST_WINDOW, DEFAULT_MAX_DIGEST_SIZE);
+	}
+
+	/**
+	 * Creates a new action dispatcher.
+	 *
+	 * @param outboxDirectory
+	 *            The directory to store undelivered outputs in (may be
+	 *            {@code null} to not store undelivered outputs)
+	 * @param durability
+	 *            The durability of the outbox files
+	 * @param threadCount
+	 *            The number of actions to execute in parallel
+	 * @param capacity
+	 *            The number of outputs that can wait for their delivery
+	 * @param initialRetryDelay
+	 *            The delay before the first retry (in milliseconds)
+	 * @param maxRetryDelay
+	 *            The maximum delay between two retries (in milliseconds)
+	 * @param maxAttempts
+	 *            The maximum number of attempts to deliver an output
+	 * @param digestWindow
+	 *            The time outputs are collected for a digest (in
+	 *            milliseconds), or {@code 0} to deliver every output on its
+	 *            own
+	 * @param maxDigestSize
+	 *            The maximum number of outputs in a digest, or {@code 0} for
+	 *            no limit
+	 */
+	public ActionDispatcher(Path outboxDirectory, Durability durability, int threadCount, int capacity, long initialRetryDelay, long maxRetryDelay, int maxAttempts, long digestWindow, int maxDigestSize) {
+		ScheduledThreadPoolExecutor actionExecutor = new ScheduledThreadPoolExecutor(threadCount, new ThreadFactoryBuilder().setNameFormat("Rhynodge Action %d").build());
+		/* retries and digests that are not due yet stay in the outbox when stopping. */
+		actionExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		this.actionExecutor = actionExecutor;
+		this.capacity = new Semaphore(capacity);
+		this.outboxDirectory = outboxDirectory;
+		this.outboxFileWriter = new StateFileWriter(durability);
+		this.initialRetryDelay = initialRetryDelay;
+		this.maxRetryDelay = maxRetryDelay;
+		this.maxAttempts = maxAttempts;
+		this.digestWindow = digestWindow;
+		this.maxDigestSize = maxDigestSize;
+		loadUndeliveredOutputs();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Dispatches the given output to the given action. If the maximum number
+	 * of outputs is already waiting for their delivery, this method blocks
+	 * until an output has been delivered.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction that created the output
+	 * @param action
+	 *            The action to execute
+	 * @param output
+	 *            The output to deliver
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	public void dispatch(String reactionName, Action action, Output output) throws InterruptedException {
+		Delivery delivery = new Delivery(reactionName, output);
+		capacity.acquire();
+		delivery.setAction(action);
+		delivery.setPermit(true);
+		if (outboxDirectory != null) {
+			delivery.setFile(outboxDirectory.resolve(deliveryCounter.incrementAndGet() + OUTBOX_FILE_SUFFIX));
+			storeDelivery(delivery);
+		}
+		schedule(delivery);
+	}
+
+	/**
+	 * Dispatches all outputs of the reaction with the given name that have
+	 * not been delivered before the last restart to the given action.
+	 * Resumed outputs do not count against the capacity, so this method
+	 * never blocks.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param action
+	 *            The current action of the reaction
+	 */
+	public void resume(String reactionName, Action action) {
+		List<Delivery> deliveries;
+		synchronized (undeliveredOutputs) {
+			deliveries = undeliveredOutputs.remove(reactionName);
+		}
+		if (deliveries == null) {
+			return;
+		}
+		logger.info(String.format("Resuming delivery of %d Output(s) for Reaction %s.", deliveries.size(), reactionName));
+		for (Delivery delivery : deliveries) {
+			delivery.setAction(action);
+			schedule(delivery);
+		}
+	}
+
+	/**
+	 * Discards all outputs that have not been delivered before the last
+	 * restart and have not been resumed since, unless their reaction is one
+	 * of the given reactions. This removes the outputs of reactions that have
+	 * been removed or renamed in the meantime from the outbox.
+	 *
+	 * @param reactionNames
+	 *            The names of all existing reactions
+	 */
+	public void discardUndeliveredOutputs(Collection<String> reactionNames) {
+		Map<String, List<Delivery>> discardedOutputs;
+		synchronized (undeliveredOutputs) {
+			discardedOutputs = Maps.newHashMap(undeliveredOutputs);
+			discardedOutputs.keySet().removeAll(reactionNames);
+			undeliveredOutputs.keySet().removeAll(discardedOutputs.keySet());
+		}
+		for (Entry<String, List<Delivery>> discardedOutput : discardedOutputs.entrySet()) {
+			logger.warn(String.format("Discarding %d undelivered Output(s) for unknown Reaction %s.", discardedOutput.getValue().size(), discardedOutput.getKey()));
+			for (Delivery delivery : discardedOutput.getValue()) {
+				finishDelivery(delivery);
+			}
+		}
+	}
+
+	/**
+	 * Stops this dispatcher. Outputs that are currently delivered are given
+	 * a minute to finish before they are interrupted; all other outputs stay
+	 * in the outbox. Afterwards all connections to SMTP servers are closed.
+	 *
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	public void stop() throws InterruptedException {
+		actionExecutor.shutdown();
+		if (!actionExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+			logger.warn("Deliveries did not finish in time, interrupting them.");
+			actionExecutor.shutdownNow();
+			actionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		SmtpTransportPool.closeAll();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Schedules the first attempt of the given delivery. If digests are
+	 * made, the delivery is added to the digest of its action instead.
+	 *
+	 * @param delivery
+	 *            The delivery to schedule
+	 */
+	private void schedule(Delivery delivery) {
+		if (digestWindow <= 0) {
+			actionExecutor.execute(new DeliveryRunner(delivery));
+			return;
+		}
+		Action action = delivery.action();
+		synchronized (pendingDigests) {
+			List<Delivery> digest = pendingDigests.get(action);
+			if (digest == null) {
+				digest = Lists.newArrayList();
+				pendingDigests.put(action, digest);
+				actionExecutor.schedule(new DigestRunner(action, digest), digestWindow, TimeUnit.MILLISECONDS);
+			}
+			digest.add(delivery);
+			if (digest.size() == maxDigestSize) {
+				/* the next delivery starts a new digest. */
+				pendingDigests.remove(action);
+				actionExecutor.execute(new DeliveryRunner(createDigestDelivery(action, digest)));
+			}
+		}
+	}
+
+	/**
+	 * Delivers the given digest, unless it has already been delivered.
+	 *
+	 * @param action
+	 *            The action of the digest
+	 * @param digest
+	 *            The deliveries of the digest
+	 */
+	private void deliverDigest(Action action, List<Delivery> digest) {
+		Delivery combinedDelivery;
+		synchronized (pendingDigests) {
+			if (pendingDigests.get(action) != digest) {
+				/* the digest has already been delivered. */
+				return;
+			}
+			pendingDigests.remove(action);
+			combinedDelivery = createDigestDelivery(action, digest);
+		}
+		deliver(combinedDelivery);
+	}
+
+	/**
+	 * Combines the given deliveries into a single delivery.
+	 *
+	 * @param action
+	 *            The action of the digest
+	 * @param digest
+	 *            The deliveries of the digest
+	 * @return The delivery of the digest
+	 */
+	private Delivery createDigestDelivery(Action action, List<Delivery> digest) {
+		Delivery combinedDelivery;
+		if (digest.size() == 1) {
+			combinedDelivery = digest.get(0);
+		} else {
+			List<String> reactionNames = Lists.newArrayList();
+			List<Output> outputs = Lists.newArrayList();
+			for (Delivery delivery : digest) {
+				reactionNames.add(delivery.reactionName());
+				outputs.add(delivery.output());
+			}
+			combinedDelivery = new Delivery(Joiner.on(", ").join(reactionNames), new DigestOutput(outputs));
+			combinedDelivery.setAction(action);
+			combinedDelivery.setMembers(digest);
+		}
+		logger.debug(String.format("Delivering digest of %d Output(s) for Reaction(s) %s.", digest.size(), combinedDelivery.reactionName()));
+		return combinedDelivery;
+	}
+
+	/**
+	 * Tries to deliver the given output. If the action fails, another attempt
+	 * is scheduled.
+	 *
+	 * @param delivery
+	 *            The delivery to attempt
+	 */
+	private void deliver(Delivery delivery) {
+		try {
+			delivery.action().execute(delivery.output());
+			logger.debug(String.format("Delivered Output for Reaction %s.", delivery.reactionName()));
+			finishDelivery(delivery);
+		} catch (ActionException ae1) {
+			if (ae1.permanent()) {
+				logger.error(String.format("Could not deliver Output for Reaction %s, giving up.", delivery.reactionName()), ae1);
+				finishDelivery(delivery);
+				return;
+			}
+			retryDelivery(delivery, ae1);
+		} catch (RuntimeException re1) {
+			retryDelivery(delivery, re1);
+		}
+	}
+
+	/**
+	 * Schedules another attempt of the given delivery, unless the maximum
+	 * number of attempts has been made.
+	 *
+	 * @param delivery
+	 *            The delivery that failed
+	 * @param failure
+	 *            The cause of the failure
+	 */
+	private void retryDelivery(Delivery delivery, Exception failure) {
+		delivery.addAttempt();
+		if (delivery.attempts() >= maxAttempts) {
+			logger.error(String.format("Could not deliver Output for Reaction %s after %d attempts, giving up.", delivery.reactionName(), delivery.attempts()), failure);
+			finishDelivery(delivery);
+			return;
+		}
+		long retryDelay = Math.min(initialRetryDelay << Math.min(delivery.attempts() - 1, 30), maxRetryDelay);
+		logger.warn(String.format("Could not deliver Output for Reaction %s, retrying in %d seconds.", delivery.reactionName(), TimeUnit.MILLISECONDS.toSeconds(retryDelay)), failure);
+		storeDelivery(delivery);
+		try {
+			actionExecutor.schedule(new DeliveryRunner(delivery), retryDelay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException ree1) {
+			/* the dispatcher is stopping, the output stays in the outbox. */
+			logger.debug(String.format("Not retrying Output for Reaction %s, dispatcher is stopping.", delivery.reactionName()));
+		}
+	}
+
+	/**
+	 * Removes the given delivery from the outbox and releases its permit.
+	 *
+	 * @param delivery
+	 *            The finished delivery
+	 */
+	private void finishDelivery(Delivery delivery) {
+		for (Delivery member : delivery.members()) {
+			finishDelivery(member);
+		}
+		if (delivery.file() != null) {
+			try {
+				Files.deleteIfExists(delivery.file());
+			} catch (IOException ioe1) {
+				logger.warn(String.format("Could not remove %s from outbox!", delivery.file()), ioe1);
+			}
+		}
+		if (delivery.permit()) {
+			capacity.release();
+		}
+	}
+
+	/**
+	 * Writes the given delivery to its outbox file, if it has one.
+	 *
+	 * @param delivery
+	 *            The delivery to store
+	 */
+	private void storeDelivery(Delivery delivery) {
+		if (delivery.file() == null) {
+			return;
+		}
+		delivery.render();
+		try {
+			outboxFileWriter.write(objectMapper.writeValueAsBytes(delivery), delivery.file());
+		} catch (IOException ioe1) {
+			logger.warn(String.format("Could not store Output for Reaction %s in outbox!", delivery.reactionName()), ioe1);
+		}
+	}
+
+	/**
+	 * Loads all undelivered outputs from the outbox directory.
+	 */
+	private void loadUndeliveredOutputs() {
+		if (outboxDirectory == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(outboxDirectory);
+			DirectoryStream<Path> outboxFiles = Files.newDirectoryStream(outboxDirectory, "*" + OUTBOX_FILE_SUFFIX);
+			try {
+				for (Path outboxFile : outboxFiles) {
+					try {
+						Delivery delivery = objectMapper.readValue(outboxFile.toFile(), Delivery.class);
+						delivery.setFile(outboxFile);
+						synchronized (undeliveredOutputs) {
+							if (!undeliveredOutputs.containsKey(delivery.reactionName())) {
+								undeliveredOutputs.put(delivery.reactionName(), Lists.<Delivery> newArrayList());
+							}
+							undeliveredOutputs.get(delivery.reactionName()).add(delivery);
+						}
+					} catch (IOException ioe1) {
+						logger.warn(String.format("Could not load %s from outbox!", outboxFile), ioe1);
+					}
+				}
+			} finally {
+				outboxFiles.close();
+			}
+		} catch (IOException ioe1) {
+			logger.warn(String.format("Could not read outbox %s!", outboxDirectory), ioe1);
+		}
+	}
+
+	/**
+	 * Runs a single attempt of a delivery.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private class DeliveryRunner implements Runnable {
+
+		/** The delivery to attempt. */
+		private final Delivery delivery;
+
+		/**
+		 * Creates a new delivery runner.
+		 *
+		 * @param delivery
+		 *            The delivery to attempt
+		 */
+		public DeliveryRunner(Delivery delivery) {
+			this.delivery = delivery;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			deliver(delivery);
+		}
+
+	}
+
+	/**
+	 * Delivers a digest once its window has passed or it is full.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private class DigestRunner implements Runnable {
+
+		/** The action of the digest. */
+		private final Action action;
+
+		/** The deliveries of the digest. */
+		private final List<Delivery> digest;
+
+		/**
+		 * Creates a new digest runner.
+		 *
+		 * @param action
+		 *            The action of the digest
+		 * @param digest
+		 *            The deliveries of the digest
+		 */
+		public DigestRunner(Action action, List<Delivery> digest) {
+			this.action = action;
+			this.digest = digest;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			deliverDigest(action, digest);
+		}
+
+	}
+
+	/**
+	 * An output that waits for its delivery. The output and the number of
+	 * attempts are stored in the outbox. A delivery of a digest is not stored
+	 * itself; instead, the deliveries it combines stay in the outbox until the
+	 * digest has been delivered.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class Delivery {
+
+		/** The name of the reaction that created the output. */
+		@JsonProperty
+		private final String reactionName;
+
+		/** The output to deliver, or {@code null} if loaded from the outbox. */
+		private final Output output;
+
+		/** The summary of the output, once rendered for the outbox. */
+		@JsonProperty
+		private String summary;
+
+		/** The texts of the output by MIME type, once rendered for the outbox. */
+		@JsonProperty
+		private final Map<String, String> texts = Maps.newHashMap();
+
+		/** The number of failed attempts. */
+		@JsonProperty
+		private int attempts;
+
+		/** The action to execute. */
+		private volatile Action action;
+
+		/** The outbox file of this delivery. */
+		private volatile Path file;
+
+		/** Whether this delivery holds a permit of the capacity. */
+		private volatile boolean permit;
+
+		/** The deliveries combined by this delivery. */
+		private volatile List<Delivery> members = Collections.emptyList();
+
+		/**
+		 * No-arg constructor for deserialization.
+		 */
+		@SuppressWarnings("unused")
+		private Delivery() {
+			this.reactionName = null;
+			this.output = null;
+		}
+
+		/**
+		 * Creates a new delivery.
+		 *
+		 * @param reactionName
+		 *            The name of the reaction that created the output
+		 * @param output
+		 *            The output to deliver
+		 */
+		public Delivery(String reactionName, Output output) {
+			this.reactionName = reactionName;
+			this.output = output;
+		}
+
+		//
+		// ACCESSORS
+		//
+
+		/**
+		 * Returns the name of the reaction that created the output.
+		 *
+		 * @return The name of the reaction
+		 */
+		public String reactionName() {
+			return reactionName;
+		}
+
+		/**
+		 * Returns the output to deliver. The output of a delivery that has
+		 * been loaded from the outbox is recreated from its rendered texts.
+		 *
+		 * @return The output to deliver
+		 */
+		public Output output() {
+			if (this.output != null) {
+				return this.output;
+			}
+			DefaultOutput output = new DefaultOutput(summary);
+			for (Map.Entry<String, String> text : texts.entrySet()) {
+				output.addText(text.getKey(), text.getValue());
+			}
+			return output;
+		}
+
+		/**
+		 * Returns the number of failed attempts.
+		 *
+		 * @return The number of failed attempts
+		 */
+		public synchronized int attempts() {
+			return attempts;
+		}
+
+		/**
+		 * Returns the action to execute.
+		 *
+		 * @return The action to execute
+		 */
+		public Action action() {
+			return action;
+		}
+
+		/**
+		 * Sets the action to execute.
+		 *
+		 * @param action
+		 *            The action to execute
+		 */
+		public void setAction(Action action) {
+			this.action = action;
+		}
+
+		/**
+		 * Returns the outbox file of this delivery.
+		 *
+		 * @return The outbox file, or {@code null} if this delivery is not
+		 *         stored
+		 */
+		public Path file() {
+			return file;
+		}
+
+		/**
+		 * Sets the outbox file of this delivery.
+		 *
+		 * @param file
+		 *            The outbox file
+		 */
+		public void setFile(Path file) {
+			this.file = file;
+		}
+
+		/**
+		 * Returns whether this delivery holds a permit of the capacity.
+		 *
+		 * @return {@code true} if this delivery holds a permit, {@code false}
+		 *         otherwise
+		 */
+		public boolean permit() {
+			return permit;
+		}
+
+		/**
+		 * Sets whether this delivery holds a permit of the capacity.
+		 *
+		 * @param permit
+		 *            {@code true} if this delivery holds a permit,
+		 *            {@code false} otherwise
+		 */
+		public void setPermit(boolean permit) {
+			this.permit = permit;
+		}
+
+		/**
+		 * Returns the deliveries combined by this delivery.
+		 *
+		 * @return The combined deliveries, or an empty list if this delivery
+		 *         is not a digest
+		 */
+		public List<Delivery> members() {
+			return members;
+		}
+
+		/**
+		 * Sets the deliveries combined by this delivery.
+		 *
+		 * @param members
+		 *            The combined deliveries
+		 */
+		public void setMembers(List<Delivery> members) {
+			this.members = members;
+		}
+
+		//
+		// ACTIONS
+		//
+
+		/**
+		 * Counts a failed attempt.
+		 */
+		public synchronized void addAttempt() {
+			++attempts;
+		}
+
+		/**
+		 * Renders the summary and the texts of the output so that they can be
+		 * stored in the outbox. Outputs are only rendered once.
+		 */
+		public synchronized void render() {
+			if ((output == null) || (summary != null)) {
+				return;
+			}
+			for (String mimeType : MIME_TYPES) {
+				String text = output.text(mimeType, -1);
+				if (text != null) {
+					texts.put(mimeType, text);
+				}
+			}
+			summary = output.summary();
+		}
+
+	}
+
+}
@@ -17,27 +17,44 @@
 
 package net.pterodactylus.rhynodge.engine;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.SortedMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
-import net.pterodactylus.rhynodge.Filter;
-import net.pterodactylus.rhynodge.Query;
 import net.pterodactylus.rhynodge.Reaction;
-import net.pterodactylus.rhynodge.Trigger;
-import net.pterodactylus.rhynodge.states.AbstractState;
-import net.pterodactylus.rhynodge.states.FailedState;
+import net.pterodactylus.rhynodge.engine.Scheduler.ScheduledReaction;
+import net.pterodactylus.rhynodge.queries.HttpClientFactory;
+import net.pterodactylus.rhynodge.queries.HttpQuery;
 import net.pterodactylus.rhynodge.states.StateManager;
 
-import org.apache.commons.lang3.tuple.Pair;
+import org.apache.http.client.HttpClient;
 import org.apache.log4j.Logger;
 
-import com.google.common.collect.Maps;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Rhynodge main engine.
+ * <p>
+ * The engine keeps all {@link Reaction}s in a {@link Scheduler} and hands all
+ * due reactions to a bounded pool of worker threads. A reaction is removed
+ * from the schedule while it is running and is only scheduled again once it
+ * has finished, so a {@link Reaction} is never run more than once at the same
+ * time.
+ * <p>
+ * All {@link HttpQuery}s of the reactions share a single {@link HttpClient}
+ * that is shut down together with the engine. Actions are executed by an
+ * {@link ActionDispatcher} so that slow actions do not block the reactions.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
@@ -46,21 +63,90 @@ public class Engine extends AbstractExecutionThreadService {
 	/** The logger. */
 	private static final Logger logger = Logger.getLogger(Engine.class);
 
+	/** The default number of reactions to run in parallel. */
+	public static final int DEFAULT_THREAD_COUNT = 4;
+
 	/** The state manager. */
 	private final StateManager stateManager;
 
+	/** The executor for the reactions. */
+	private final ExecutorService reactionExecutor;
+
+	/** The HTTP client shared by all HTTP queries. */
+	private final HttpClient httpClient;
+
+	/** The dispatcher for the actions. */
+	private final ActionDispatcher actionDispatcher;
+
 	/** All defined reactions. */
 	/* synchronize on itself. */
 	private final Map<String, Reaction> reactions = new HashMap<String, Reaction>();
 
+	/** The schedule of all reactions that are not currently running. */
+	/* synchronize on reactions. */
+	private final Scheduler scheduler = new Scheduler();
+
+	/** The names of all currently running reactions. */
+	/* synchronize on reactions. */
+	private final Set<String> runningReactions = new HashSet<String>();
+
+	/** The digests of the last successfully processed contents. */
+	private final ConcurrentMap<String, HashCode> contentDigests = new ConcurrentHashMap<String, HashCode>();
+
 	/**
-	 * Creates a new engine.
+	 * Creates a new engine that runs up to {@link #DEFAULT_THREAD_COUNT}
+	 * reactions in parallel.
 	 *
 	 * @param stateManager
 	 *            The state manager
 	 */
 	public Engine(StateManager stateManager) {
+		this(stateManager, DEFAULT_THREAD_COUNT);
+	}
+
+	/**
+	 * Creates a new engine.
+	 *
+	 * @param stateManager
+	 *            The state manager
+	 * @param threadCount
+	 *            The maximum number of reactions to run in parallel
+	 */
+	public Engine(StateManager stateManager, int threadCount) {
+		this(stateManager, threadCount, HttpClientFactory.createHttpClient());
+	}
+
+	/**
+	 * Creates a new engine.
+	 *
+	 * @param stateManager
+	 *            The state manager
+	 * @param threadCount
+	 *            The maximum number of reactions to run in parallel
+	 * @param httpClient
+	 *            The HTTP client to use for all HTTP queries
+	 */
+	public Engine(StateManager stateManager, int threadCount, HttpClient httpClient) {
+		this(stateManager, threadCount, httpClient, new ActionDispatcher());
+	}
+
+	/**
+	 * Creates a new engine.
+	 *
+	 * @param stateManager
+	 *            The state manager
+	 * @param threadCount
+	 *            The maximum number of reactions to run in parallel
+	 * @param httpClient
+	 *            The HTTP client to use for all HTTP queries
+	 * @param actionDispatcher
+	 *            The dispatcher that executes the actions of all reactions
+	 */
+	public Engine(StateManager stateManager, int threadCount, HttpClient httpClient, ActionDispatcher actionDispatcher) {
 		this.stateManager = stateManager;
+		this.reactionExecutor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder().setNameFormat("Rhynodge Reaction %d").build());
+		this.httpClient = httpClient;
+		this.actionDispatcher = actionDispatcher;
 	}
 
 	//
@@ -68,7 +154,8 @@ public class Engine extends AbstractExecutionThreadService {
 	//
 
 	/**
-	 * Adds the given reaction to this engine.
+	 * Adds the given reaction to this engine. The reaction is scheduled
+	 * according to the time of its last state.
 	 *
 	 * @param name
 	 *            The name of the reaction
@@ -76,10 +163,57 @@ public class Engine extends AbstractExecutionThreadService {
 	 *            The reaction to add to this engine
 	 */
 	public void addReaction(String name, Reaction reaction) {
+		if (reaction.query() instanceof HttpQuery) {
+			((HttpQuery) reaction.query()).setHttpClient(httpClient);
+		}
+		net.pterodactylus.rhynodge.State lastState = stateManager.loadLastState(name);
+		long lastStateTime = (lastState != null) ? lastState.time() : 0;
 		synchronized (reactions) {
 			reactions.put(name, reaction);
+			contentDigests.remove(name);
+			if (!runningReactions.contains(name)) {
+				scheduler.schedule(name, reaction, lastStateTime + reaction.updateInterval());
+			}
 			reactions.notifyAll();
 		}
+		actionDispatcher.resume(name, reaction.action());
+	}
+
+	/**
+	 * Replaces the reaction with the given name by the given reaction. The
+	 * reaction takes over the place of the replaced reaction in the schedule,
+	 * adjusted by the difference of their update intervals; if the replaced
+	 * reaction is currently running, the reaction is scheduled once it has
+	 * finished. If the reaction shares its query, filters, and trigger with
+	 * the replaced reaction, unchanged content is still recognized as such.
+	 * If there is no reaction with the given name, the reaction is
+	 * added as by {@link #addReaction(String, Reaction)}.
+	 *
+	 * @param name
+	 *            The name of the reaction
+	 * @param reaction
+	 *            The reaction that replaces the current reaction
+	 */
+	public void replaceReaction(String name, Reaction reaction) {
+		synchronized (reactions) {
+			Reaction previousReaction = reactions.get(name);
+			if (previousReaction != null) {
+				if (reaction.query() instanceof HttpQuery) {
+					((HttpQuery) reaction.query()).setHttpClient(httpClient);
+				}
+				reactions.put(name, reaction);
+				if (!sameProcessing(previousReaction, reaction)) {
+					contentDigests.remove(name);
+				}
+				ScheduledReaction scheduledReaction = scheduler.unschedule(name);
+				if (scheduledReaction != null) {
+					scheduler.schedule(name, reaction, scheduledReaction.dueTime() - previousReaction.updateInterval() + reaction.updateInterval());
+				}
+				reactions.notifyAll();
+				return;
+			}
+		}
+		addReaction(name, reaction);
 	}
 
 	/**
@@ -94,10 +228,41 @@ public class Engine extends AbstractExecutionThreadService {
 				return;
 			}
 			reactions.remove(name);
+			scheduler.unschedule(name);
+			contentDigests.remove(name);
 			reactions.notifyAll();
 		}
 	}
 
+	/**
+	 * Loads the states of the reactions with the given names in parallel, so
+	 * that adding and running the reactions does not have to wait for them.
+	 *
+	 * @param reactionNames
+	 *            The names of the reactions
+	 * @param executorService
+	 *            The executor to load the states with
+	 * @return The number of reactions whose states have been loaded
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 * @see StateManager#preloadStates(Collection, ExecutorService)
+	 */
+	public int preloadStates(Collection<String> reactionNames, ExecutorService executorService) throws InterruptedException {
+		return stateManager.preloadStates(reactionNames, executorService);
+	}
+
+	/**
+	 * Discards all outputs from before the last restart that have not been
+	 * resumed since and do not belong to any of the given reactions.
+	 *
+	 * @param reactionNames
+	 *            The names of all existing reactions
+	 * @see ActionDispatcher#discardUndeliveredOutputs(Collection)
+	 */
+	public void discardUndeliveredOutputs(Collection<String> reactionNames) {
+		actionDispatcher.discardUndeliveredOutputs(reactionNames);
+	}
+
 	//
 	// ABSTRACTSERVICE METHODS
 	//
@@ -109,10 +274,11 @@ public class Engine extends AbstractExecutionThreadService {
 	public void run() {
 		while (isRunning()) {
 
-			/* delay if we have no reactions. */
+			/* find all due reactions. */
+			List<ScheduledReaction> dueReactions;
 			synchronized (reactions) {
-				if (reactions.isEmpty()) {
-					logger.debug("Sleeping while no Reactions available.");
+				if (scheduler.isEmpty()) {
+					logger.debug("Sleeping while no Reactions are scheduled.");
 					try {
 						reactions.wait();
 					} catch (InterruptedException ie1) {
@@ -120,98 +286,120 @@ public class Engine extends AbstractExecutionThreadService {
 					}
 					continue;
 				}
-			}
 
-			/* find next reaction. */
-			SortedMap<Long, Pair<String, Reaction>> nextReactions = Maps.newTreeMap();
-			String reactionName;
-			Reaction nextReaction;
-			synchronized (reactions) {
-				for (Entry<String, Reaction> reactionEntry : reactions.entrySet()) {
-					net.pterodactylus.rhynodge.State state = stateManager.loadLastState(reactionEntry.getKey());
-					long stateTime = (state != null) ? state.time() : 0;
-					nextReactions.put(stateTime + reactionEntry.getValue().updateInterval(), Pair.of(reactionEntry.getKey(), reactionEntry.getValue()));
-				}
-				reactionName = nextReactions.get(nextReactions.firstKey()).getLeft();
-				nextReaction = nextReactions.get(nextReactions.firstKey()).getRight();
-			}
-			logger.debug(String.format("Next Reaction: %s.", reactionName));
-
-			/* wait until the next reaction has to run. */
-			net.pterodactylus.rhynodge.State lastState = stateManager.loadLastState(reactionName);
-			long lastStateTime = (lastState != null) ? lastState.time() : 0;
-			int lastStateFailCount = (lastState != null) ? lastState.failCount() : 0;
-			long waitTime = (lastStateTime + nextReaction.updateInterval()) - System.currentTimeMillis();
-			logger.debug(String.format("Time to wait for next Reaction: %d millseconds.", waitTime));
-			if (waitTime > 0) {
-				synchronized (reactions) {
+				/* wait until the next reaction has to run. */
+				long nextDueTime = scheduler.nextDueTime();
+				long waitTime = nextDueTime - System.currentTimeMillis();
+				logger.debug(String.format("Time to wait for next Reaction: %d millseconds.", waitTime));
+				if (waitTime > 0) {
 					try {
-						logger.info(String.format("Waiting until %tc.", lastStateTime + nextReaction.updateInterval()));
+						logger.info(String.format("Waiting until %tc.", nextDueTime));
 						reactions.wait(waitTime);
 					} catch (InterruptedException ie1) {
 						/* we’re looping! */
 					}
-				}
 
-				/* re-start loop to check for new reactions. */
-				continue;
-			}
-
-			/* run reaction. */
-			logger.info(String.format("Running Query for %s...", reactionName));
-			Query query = nextReaction.query();
-			net.pterodactylus.rhynodge.State state;
-			try {
-				logger.debug("Querying system...");
-				state = query.state();
-				if (state == null) {
-					state = FailedState.INSTANCE;
+					/* re-start loop to check for new reactions. */
+					continue;
 				}
-				logger.debug("System queried.");
-			} catch (Throwable t1) {
-				logger.warn("Querying system failed!", t1);
-				state = new AbstractState(t1) {
-					/* no further state. */
-				};
-			}
-			logger.debug(String.format("State is %s.", state));
-
-			/* convert states. */
-			for (Filter filter : nextReaction.filters()) {
-				if (state.success()) {
-					net.pterodactylus.rhynodge.State newState = filter.filter(state);
-					logger.debug(String.format("Old state is %s, new state is %s.", state, newState));
-					state = newState;
+
+				dueReactions = scheduler.removeDueReactions(System.currentTimeMillis());
+				for (ScheduledReaction dueReaction : dueReactions) {
+					runningReactions.add(dueReaction.reactionName());
 				}
 			}
-			if (!state.success()) {
-				state.setFailCount(lastStateFailCount + 1);
+
+			/* hand reactions to the executor. */
+			for (ScheduledReaction dueReaction : dueReactions) {
+				logger.debug(String.format("Next Reaction: %s.", dueReaction.reactionName()));
+				final String reactionName = dueReaction.reactionName();
+				final Reaction reaction = dueReaction.reaction();
+				final ReactionRunner reactionRunner = new ReactionRunner(stateManager, reactionName, reaction, contentDigests, actionDispatcher);
+				reactionExecutor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						long lastStateTime = System.currentTimeMillis();
+						try {
+							lastStateTime = reactionRunner.call().time();
+						} catch (RuntimeException re1) {
+							logger.warn(String.format("Reaction %s failed!", reactionName), re1);
+						} finally {
+							reactionFinished(reactionName, reaction, lastStateTime);
+						}
+					}
+				});
 			}
-			net.pterodactylus.rhynodge.State lastSuccessfulState = stateManager.loadLastSuccessfulState(reactionName);
+		}
+	}
 
-			/* merge states. */
-			boolean triggerHit = false;
-			Trigger trigger = nextReaction.trigger();
-			if ((lastSuccessfulState != null) && lastSuccessfulState.success() && state.success()) {
-				net.pterodactylus.rhynodge.State newState = trigger.mergeStates(lastSuccessfulState, state);
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void triggerShutdown() {
+		synchronized (reactions) {
+			reactions.notifyAll();
+		}
+	}
 
-				/* save new state. */
-				stateManager.saveState(reactionName, newState);
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void shutDown() throws Exception {
+		reactionExecutor.shutdown();
+		reactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+		stateManager.close();
+		actionDispatcher.stop();
+		httpClient.getConnectionManager().shutdown();
+		HttpQuery.shutDownDefaultHttpClient();
+	}
 
-				triggerHit = trigger.triggers();
-			} else {
-				/* save first or error state. */
-				stateManager.saveState(reactionName, state);
-			}
+	//
+	// PRIVATE METHODS
+	//
 
-			/* run action if trigger was hit. */
-			logger.debug(String.format("Trigger was hit: %s.", triggerHit));
-			if (triggerHit) {
-				logger.info("Executing Action...");
-				nextReaction.action().execute(trigger.output(nextReaction));
+	/**
+	 * Marks the reaction with the given name as not running anymore and
+	 * schedules it again, unless it has been removed in the meantime.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction that finished
+	 * @param finishedReaction
+	 *            The reaction that finished
+	 * @param lastStateTime
+	 *            The time of the last state of the reaction (in milliseconds
+	 *            since Jan 1, 1970 UTC)
+	 */
+	private void reactionFinished(String reactionName, Reaction finishedReaction, long lastStateTime) {
+		synchronized (reactions) {
+			runningReactions.remove(reactionName);
+			Reaction reaction = reactions.get(reactionName);
+			if ((reaction != finishedReaction) && ((reaction == null) || !sameProcessing(reaction, finishedReaction))) {
+				/* the content digest belongs to the replaced reaction. */
+				contentDigests.remove(reactionName);
 			}
-
+			if (reaction != null) {
+				scheduler.schedule(reactionName, reaction, lastStateTime + reaction.updateInterval());
+			}
+			reactions.notifyAll();
 		}
 	}
 
+	/**
+	 * Returns whether the given reactions process their input in the same
+	 * way, i.e. whether they share their query, filters, and trigger.
+	 *
+	 * @param leftReaction
+	 *            The first reaction
+	 * @param rightReaction
+	 *            The second reaction
+	 * @return {@code true} if both reactions process their input in the same
+	 *         way, {@code false} otherwise
+	 */
+	private static boolean sameProcessing(Reaction leftReaction, Reaction rightReaction) {
+		return (leftReaction.query() == rightReaction.query()) && Iterables.elementsEqual(leftReaction.filters(), rightReaction.filters()) && (leftReaction.trigger() == rightReaction.trigger());
+	}
+
 }
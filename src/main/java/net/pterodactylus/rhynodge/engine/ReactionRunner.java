@@ -0,0 +1,273 @@
+/*
+ * Rhynodge - ReactionRunner.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.engine;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.pterodactylus.rhynodge.ActionException;
+import net.pterodactylus.rhynodge.Filter;
+import net.pterodactylus.rhynodge.MergeResult;
+import net.pterodactylus.rhynodge.Query;
+import net.pterodactylus.rhynodge.Reaction;
+import net.pterodactylus.rhynodge.State;
+import net.pterodactylus.rhynodge.StatelessTrigger;
+import net.pterodactylus.rhynodge.Trigger;
+import net.pterodactylus.rhynodge.queries.HttpQuery;
+import net.pterodactylus.rhynodge.states.AbstractState;
+import net.pterodactylus.rhynodge.states.FailedState;
+import net.pterodactylus.rhynodge.states.HttpState;
+import net.pterodactylus.rhynodge.states.StateManager;
+import net.pterodactylus.rhynodge.states.UnchangedState;
+import net.pterodactylus.rhynodge.triggers.SynchronizedTrigger;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+/**
+ * Runs a single {@link Reaction} once: the {@link Query} is run, its
+ * {@link State} is handed through all {@link Filter}s, the result is merged
+ * with the last successful state by the {@link Trigger}, and the action is
+ * executed if the trigger was hit, either directly or by an
+ * {@link ActionDispatcher}. The state that was saved is returned.
+ * <p>
+ * If the query returns an {@link UnchangedState}, or an {@link HttpState}
+ * whose content is identical to the last successfully processed content, the
+ * last state is kept and nothing else is done; an unchanged state is
+ * returned.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ReactionRunner implements Callable<State> {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(ReactionRunner.class);
+
+	/** The state manager. */
+	private final StateManager stateManager;
+
+	/** The name of the reaction. */
+	private final String reactionName;
+
+	/** The reaction to run. */
+	private final Reaction reaction;
+
+	/** The digests of the last successfully processed contents. */
+	private final ConcurrentMap<String, HashCode> contentDigests;
+
+	/** The dispatcher to execute the action with. */
+	private final ActionDispatcher actionDispatcher;
+
+	/**
+	 * Creates a new reaction runner.
+	 *
+	 * @param stateManager
+	 *            The state manager
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param reaction
+	 *            The reaction to run
+	 */
+	public ReactionRunner(StateManager stateManager, String reactionName, Reaction reaction) {
+		this(stateManager, reactionName, reaction, new ConcurrentHashMap<String, HashCode>());
+	}
+
+	/**
+	 * Creates a new reaction runner.
+	 *
+	 * @param stateManager
+	 *            The state manager
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param reaction
+	 *            The reaction to run
+	 * @param contentDigests
+	 *            The digests of the last successfully processed contents of
+	 *            all reactions, by reaction name
+	 */
+	public ReactionRunner(StateManager stateManager, String reactionName, Reaction reaction, ConcurrentMap<String, HashCode> contentDigests) {
+		this(stateManager, reactionName, reaction, contentDigests, null);
+	}
+
+	/**
+	 * Creates a new reaction runner.
+	 *
+	 * @param stateManager
+	 *            The state manager
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param reaction
+	 *            The reaction to run
+	 * @param contentDigests
+	 *            The digests of the last successfully processed contents of
+	 *            all reactions, by reaction name
+	 * @param actionDispatcher
+	 *            The dispatcher to execute the action with (may be
+	 *            {@code null} to execute the action in the current thread)
+	 */
+	public ReactionRunner(StateManager stateManager, String reactionName, Reaction reaction, ConcurrentMap<String, HashCode> contentDigests, ActionDispatcher actionDispatcher) {
+		this.stateManager = stateManager;
+		this.reactionName = reactionName;
+		this.reaction = reaction;
+		this.contentDigests = contentDigests;
+		this.actionDispatcher = actionDispatcher;
+	}
+
+	//
+	// CALLABLE METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public State call() {
+		State lastState = stateManager.loadLastState(reactionName);
+		int lastStateFailCount = (lastState != null) ? lastState.failCount() : 0;
+
+		/* run reaction. */
+		logger.info(String.format("Running Query for %s...", reactionName));
+		Query query = reaction.query();
+		State state = queryState(query);
+		boolean lastStateSuccessful = (lastState != null) && lastState.success();
+		if ((state instanceof UnchangedState) && !lastStateSuccessful) {
+
+			/* there is no state to keep, query the full state. */
+			logger.debug("Last state can not be kept, querying again.");
+			if (query instanceof HttpQuery) {
+				((HttpQuery) query).clearValidators();
+			}
+			state = queryState(query);
+		}
+		HashCode contentDigest = null;
+		if (state instanceof HttpState) {
+			contentDigest = Hashing.sha256().hashBytes(((HttpState) state).rawResult());
+		}
+		if (lastStateSuccessful && ((state instanceof UnchangedState) || ((contentDigest != null) && contentDigest.equals(contentDigests.get(reactionName))))) {
+			logger.info(String.format("%s has not changed.", reactionName));
+			return (state instanceof UnchangedState) ? state : new UnchangedState();
+		}
+
+		/* convert states. */
+		for (Filter filter : reaction.filters()) {
+			if (state.success()) {
+				State newState = filter.filter(state);
+				logger.debug(String.format("Old state is %s, new state is %s.", state, newState));
+				state = newState;
+			}
+		}
+		if (!state.success()) {
+			state.setFailCount(lastStateFailCount + 1);
+		}
+		State lastSuccessfulState = stateManager.loadLastSuccessfulState(reactionName);
+
+		/* merge states. */
+		MergeResult mergeResult = null;
+		State savedState;
+		if ((lastSuccessfulState != null) && lastSuccessfulState.success() && state.success()) {
+			mergeResult = statelessTrigger(reaction).merge(lastSuccessfulState, state);
+			savedState = mergeResult.state();
+		} else {
+			/* first or error state. */
+			savedState = state;
+		}
+		boolean saved = stateManager.saveState(reactionName, savedState);
+
+		/* remember the content only if it was processed and saved successfully. */
+		if ((contentDigest != null) && savedState.success() && saved) {
+			contentDigests.put(reactionName, contentDigest);
+		} else {
+			contentDigests.remove(reactionName);
+		}
+
+		/* run action if trigger was hit. */
+		boolean triggerHit = (mergeResult != null) && mergeResult.triggered();
+		logger.debug(String.format("Trigger was hit: %s.", triggerHit));
+		if (triggerHit) {
+			if (actionDispatcher != null) {
+				logger.info("Dispatching Action...");
+				try {
+					actionDispatcher.dispatch(reactionName, reaction.action(), mergeResult.output(reaction));
+				} catch (InterruptedException ie1) {
+					logger.warn(String.format("Interrupted while dispatching Action of %s!", reactionName), ie1);
+					Thread.currentThread().interrupt();
+				}
+			} else {
+				logger.info("Executing Action...");
+				try {
+					reaction.action().execute(mergeResult.output(reaction));
+				} catch (ActionException ae1) {
+					logger.warn(String.format("Action of %s failed!", reactionName), ae1);
+				}
+			}
+		}
+
+		return savedState;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the trigger of the given reaction as a {@link StatelessTrigger}.
+	 * Triggers that are not stateless are wrapped in a
+	 * {@link SynchronizedTrigger}.
+	 *
+	 * @param reaction
+	 *            The reaction to get the trigger of
+	 * @return The stateless trigger of the reaction
+	 */
+	private static StatelessTrigger statelessTrigger(Reaction reaction) {
+		Trigger trigger = reaction.trigger();
+		if (trigger instanceof StatelessTrigger) {
+			return (StatelessTrigger) trigger;
+		}
+		return new SynchronizedTrigger(trigger, reaction);
+	}
+
+	/**
+	 * Runs the given query.
+	 *
+	 * @param query
+	 *            The query to run
+	 * @return The state of the query, or a failed state if the query failed
+	 */
+	private State queryState(Query query) {
+		State state;
+		try {
+			logger.debug("Querying system...");
+			state = query.state();
+			if (state == null) {
+				state = new FailedState();
+			}
+			logger.debug("System queried.");
+		} catch (Throwable t1) {
+			logger.warn("Querying system failed!", t1);
+			state = new AbstractState(t1) {
+				/* no further state. */
+			};
+		}
+		logger.debug(String.format("State is %s.", state));
+		return state;
+	}
+
+}
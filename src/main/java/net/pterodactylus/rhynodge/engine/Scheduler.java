@@ -0,0 +1,225 @@
+/*
+ * Rhynodge - Scheduler.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.engine;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+
+import net.pterodactylus.rhynodge.Reaction;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Keeps track of when {@link Reaction}s are due next. Scheduled reactions are
+ * kept in a set ordered by their due time so that the next due reaction can
+ * be located, added, and removed in logarithmic time.
+ * <p>
+ * This class is not thread-safe; the {@link Engine} synchronizes all access
+ * to it.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class Scheduler {
+
+	/** The scheduled reactions, ordered by due time. */
+	private final NavigableSet<ScheduledReaction> scheduledReactions = Sets.newTreeSet(ScheduledReaction.BY_DUE_TIME);
+
+	/** The scheduled reactions by reaction name. */
+	private final Map<String, ScheduledReaction> scheduledReactionsByName = Maps.newHashMap();
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether no reactions are currently scheduled.
+	 *
+	 * @return {@code true} if no reactions are scheduled, {@code false}
+	 *         otherwise
+	 */
+	public boolean isEmpty() {
+		return scheduledReactions.isEmpty();
+	}
+
+	/**
+	 * Returns whether the reaction with the given name is currently scheduled.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @return {@code true} if the reaction is scheduled, {@code false}
+	 *         otherwise
+	 */
+	public boolean isScheduled(String reactionName) {
+		return scheduledReactionsByName.containsKey(reactionName);
+	}
+
+	/**
+	 * Returns the time at which the next reaction is due.
+	 *
+	 * @return The due time of the next reaction (in milliseconds since Jan 1,
+	 *         1970 UTC), or {@link Long#MAX_VALUE} if no reaction is scheduled
+	 */
+	public long nextDueTime() {
+		return scheduledReactions.isEmpty() ? Long.MAX_VALUE : scheduledReactions.first().dueTime();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Schedules the given reaction at the given time. If a reaction with the
+	 * same name is already scheduled, it is replaced.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param reaction
+	 *            The reaction to schedule
+	 * @param dueTime
+	 *            The time the reaction is due (in milliseconds since Jan 1,
+	 *            1970 UTC)
+	 */
+	public void schedule(String reactionName, Reaction reaction, long dueTime) {
+		unschedule(reactionName);
+		ScheduledReaction scheduledReaction = new ScheduledReaction(reactionName, reaction, dueTime);
+		scheduledReactions.add(scheduledReaction);
+		scheduledReactionsByName.put(reactionName, scheduledReaction);
+	}
+
+	/**
+	 * Removes the reaction with the given name from the schedule.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @return The removed reaction, or {@code null} if no reaction with the
+	 *         given name was scheduled
+	 */
+	public ScheduledReaction unschedule(String reactionName) {
+		ScheduledReaction scheduledReaction = scheduledReactionsByName.remove(reactionName);
+		if (scheduledReaction != null) {
+			scheduledReactions.remove(scheduledReaction);
+		}
+		return scheduledReaction;
+	}
+
+	/**
+	 * Removes all reactions that are due at the given time from the schedule
+	 * and returns them. Reactions that share the same due time are all
+	 * returned.
+	 *
+	 * @param time
+	 *            The current time (in milliseconds since Jan 1, 1970 UTC)
+	 * @return All due reactions, ordered by their due time
+	 */
+	public List<ScheduledReaction> removeDueReactions(long time) {
+		List<ScheduledReaction> dueReactions = Lists.newArrayList();
+		while (!scheduledReactions.isEmpty() && (scheduledReactions.first().dueTime() <= time)) {
+			ScheduledReaction scheduledReaction = scheduledReactions.pollFirst();
+			scheduledReactionsByName.remove(scheduledReaction.reactionName());
+			dueReactions.add(scheduledReaction);
+		}
+		return dueReactions;
+	}
+
+	/**
+	 * A {@link Reaction} together with its name and the time it is due.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static class ScheduledReaction {
+
+		/** Orders scheduled reactions by due time, then by name. */
+		public static final Comparator<ScheduledReaction> BY_DUE_TIME = new Comparator<ScheduledReaction>() {
+
+			@Override
+			public int compare(ScheduledReaction leftScheduledReaction, ScheduledReaction rightScheduledReaction) {
+				if (leftScheduledReaction.dueTime() < rightScheduledReaction.dueTime()) {
+					return -1;
+				}
+				if (leftScheduledReaction.dueTime() > rightScheduledReaction.dueTime()) {
+					return 1;
+				}
+				return leftScheduledReaction.reactionName().compareTo(rightScheduledReaction.reactionName());
+			}
+		};
+
+		/** The name of the reaction. */
+		private final String reactionName;
+
+		/** The reaction. */
+		private final Reaction reaction;
+
+		/** The time the reaction is due. */
+		private final long dueTime;
+
+		/**
+		 * Creates a new scheduled reaction.
+		 *
+		 * @param reactionName
+		 *            The name of the reaction
+		 * @param reaction
+		 *            The reaction
+		 * @param dueTime
+		 *            The time the reaction is due (in milliseconds since Jan
+		 *            1, 1970 UTC)
+		 */
+		private ScheduledReaction(String reactionName, Reaction reaction, long dueTime) {
+			this.reactionName = reactionName;
+			this.reaction = reaction;
+			this.dueTime = dueTime;
+		}
+
+		//
+		// ACCESSORS
+		//
+
+		/**
+		 * Returns the name of the reaction.
+		 *
+		 * @return The name of the reaction
+		 */
+		public String reactionName() {
+			return reactionName;
+		}
+
+		/**
+		 * Returns the reaction.
+		 *
+		 * @return The reaction
+		 */
+		public Reaction reaction() {
+			return reaction;
+		}
+
+		/**
+		 * Returns the time the reaction is due.
+		 *
+		 * @return The time the reaction is due (in milliseconds since Jan 1,
+		 *         1970 UTC)
+		 */
+		public long dueTime() {
+			return dueTime;
+		}
+
+	}
+
+}
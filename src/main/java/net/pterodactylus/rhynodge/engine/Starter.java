@@ -17,8 +17,23 @@
 
 package net.pterodactylus.rhynodge.engine;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 import net.pterodactylus.rhynodge.loader.ChainWatcher;
+import net.pterodactylus.rhynodge.queries.HttpClientFactory;
+import net.pterodactylus.rhynodge.states.JournalStateStore;
+import net.pterodactylus.rhynodge.states.JsonStateStore;
+import net.pterodactylus.rhynodge.states.SingleFileStateStore;
+import net.pterodactylus.rhynodge.states.StateCodec;
+import net.pterodactylus.rhynodge.states.StateCodec.Format;
+import net.pterodactylus.rhynodge.states.StateFileWriter.Durability;
 import net.pterodactylus.rhynodge.states.StateManager;
+import net.pterodactylus.rhynodge.states.StateStore;
+
+import org.apache.http.client.HttpClient;
+import org.apache.log4j.Logger;
 
 import com.lexicalscope.jewel.cli.CliFactory;
 import com.lexicalscope.jewel.cli.Option;
@@ -30,31 +45,76 @@ import com.lexicalscope.jewel.cli.Option;
  */
 public class Starter {
 
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(Starter.class);
+
+	/** The name of the directory undelivered outputs are stored in. */
+	private static final String OUTBOX_DIRECTORY_NAME = "outbox";
+
 	/**
 	 * JVM main entry method.
 	 *
 	 * @param arguments
 	 *            Command-line arguments
+	 * @throws IOException
+	 *             if the state store can not be opened
 	 */
-	public static void main(String... arguments) {
+	public static void main(String... arguments) throws IOException {
+
+		long startTime = System.currentTimeMillis();
 
 		/* parse command line. */
 		Parameters parameters = CliFactory.parseArguments(Parameters.class, arguments);
 
 		/* create the state manager. */
-		StateManager stateManager = new StateManager(parameters.getStateDirectory());
+		StateManager stateManager = new StateManager(createStateStore(parameters), parameters.getStateCacheSize());
+
+		/* create the shared HTTP client. */
+		HttpClient httpClient = HttpClientFactory.createHttpClient(parameters.getHttpMaxConnections(), parameters.getHttpMaxConnectionsPerHost(), (int) TimeUnit.SECONDS.toMillis(parameters.getHttpConnectTimeout()), (int) TimeUnit.SECONDS.toMillis(parameters.getHttpSocketTimeout()));
+
+		/* create the action dispatcher. */
+		ActionDispatcher actionDispatcher = new ActionDispatcher(Paths.get(parameters.getStateDirectory(), OUTBOX_DIRECTORY_NAME), parameters.getStateDurability(), parameters.getActionThreadCount(), parameters.getActionQueueSize(), ActionDispatcher.DEFAULT_INITIAL_RETRY_DELAY, ActionDispatcher.DEFAULT_MAX_RETRY_DELAY, parameters.getActionMaxAttempts(), TimeUnit.SECONDS.toMillis(parameters.getActionDigestWindow()), parameters.getActionDigestSize());
 
 		/* create the engine. */
-		Engine engine = new Engine(stateManager);
+		Engine engine = new Engine(stateManager, parameters.getThreadCount(), httpClient, actionDispatcher);
 
-		/* start a watcher. */
+		/* start a watcher, and wait until all chains are loaded. */
 		ChainWatcher chainWatcher = new ChainWatcher(engine, parameters.getChainDirectory());
-		chainWatcher.start();
+		chainWatcher.startAndWait();
 
 		/* start the engine. */
 		engine.start();
+		logger.info(String.format("Ready after %d ms.", System.currentTimeMillis() - startTime));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Creates the state store selected by the given parameters.
+	 *
+	 * @param parameters
+	 *            The command-line parameters
+	 * @return The state store
+	 * @throws IOException
+	 *             if the state store can not be opened
+	 */
+	private static StateStore createStateStore(Parameters parameters) throws IOException {
+		StateCodec stateCodec = new StateCodec(parameters.getStateFormat());
+		if ("single-file".equals(parameters.getStateStore())) {
+			return new SingleFileStateStore(Paths.get(parameters.getStateDirectory(), SingleFileStateStore.DEFAULT_FILE_NAME), parameters.getStateDurability(), stateCodec);
+		}
+		if ("journal".equals(parameters.getStateStore())) {
+			return new JournalStateStore(parameters.getStateDirectory(), parameters.getStateDurability(), JournalStateStore.DEFAULT_COMPACTION_THRESHOLD, stateCodec);
+		}
+		if ("json".equals(parameters.getStateStore())) {
+			return new JsonStateStore(parameters.getStateDirectory(), parameters.getStateDurability(), stateCodec);
+		}
+		throw new IllegalArgumentException(String.format("Unknown state store: %s", parameters.getStateStore()));
 	}
 
+
 	/**
 	 * Definition of the command-line parameters.
 	 *
@@ -78,6 +138,118 @@ public class Starter {
 		@Option(defaultValue = "states", shortName = "s", description = "The directory to store states in")
 		String getStateDirectory();
 
+		/**
+		 * Returns the type of the state store.
+		 *
+		 * @return The type of the state store
+		 */
+		@Option(defaultValue = "json", description = "How to store states (json, journal, single-file)")
+		String getStateStore();
+
+		/**
+		 * Returns the maximum weight of all cached states.
+		 *
+		 * @return The size of the state cache
+		 */
+		@Option(defaultValue = "100000", description = "The maximum weight of the state cache (roughly the number of torrent files)")
+		long getStateCacheSize();
+
+		/**
+		 * Returns when written states are flushed to the disk.
+		 *
+		 * @return The durability of written states
+		 */
+		@Option(defaultValue = "NONE", description = "When to flush written states to the disk (NONE, GROUP_COMMIT, SYNC)")
+		Durability getStateDurability();
+
+		/**
+		 * Returns the format states are written in.
+		 *
+		 * @return The format of written states
+		 */
+		@Option(defaultValue = "JSON", description = "The format to write states in (JSON, SMILE)")
+		Format getStateFormat();
+
+		/**
+		 * Returns the maximum number of reactions to run in parallel.
+		 *
+		 * @return The number of reaction threads
+		 */
+		@Option(defaultValue = "4", shortName = "t", description = "The maximum number of reactions to run in parallel")
+		int getThreadCount();
+
+		/**
+		 * Returns the maximum number of open HTTP connections.
+		 *
+		 * @return The maximum number of HTTP connections
+		 */
+		@Option(defaultValue = "20", description = "The maximum number of open HTTP connections")
+		int getHttpMaxConnections();
+
+		/**
+		 * Returns the maximum number of open HTTP connections per host.
+		 *
+		 * @return The maximum number of HTTP connections per host
+		 */
+		@Option(defaultValue = "2", description = "The maximum number of open HTTP connections per host")
+		int getHttpMaxConnectionsPerHost();
+
+		/**
+		 * Returns the HTTP connect timeout.
+		 *
+		 * @return The HTTP connect timeout (in seconds)
+		 */
+		@Option(defaultValue = "300", description = "The timeout for establishing HTTP connections (in seconds)")
+		int getHttpConnectTimeout();
+
+		/**
+		 * Returns the HTTP socket timeout.
+		 *
+		 * @return The HTTP socket timeout (in seconds)
+		 */
+		@Option(defaultValue = "300", description = "The timeout for reading from HTTP connections (in seconds)")
+		int getHttpSocketTimeout();
+
+		/**
+		 * Returns the number of actions to execute in parallel.
+		 *
+		 * @return The number of action threads
+		 */
+		@Option(defaultValue = "2", description = "The number of actions to execute in parallel")
+		int getActionThreadCount();
+
+		/**
+		 * Returns the maximum number of outputs waiting for their delivery.
+		 *
+		 * @return The size of the action queue
+		 */
+		@Option(defaultValue = "100", description = "The maximum number of outputs waiting for their delivery")
+		int getActionQueueSize();
+
+		/**
+		 * Returns the maximum number of attempts to deliver an output.
+		 *
+		 * @return The maximum number of delivery attempts
+		 */
+		@Option(defaultValue = "10", description = "The maximum number of attempts to deliver an output")
+		int getActionMaxAttempts();
+
+		/**
+		 * Returns the time outputs are collected for a digest.
+		 *
+		 * @return The digest window (in seconds)
+		 */
+		@Option(defaultValue = "0", description = "The time outputs for the same recipient are collected and sent as a single digest (in seconds, 0 to send every output on its own)")
+		long getActionDigestWindow();
+
+		/**
+		 * Returns the maximum number of outputs in a digest.
+		 *
+		 * @return The maximum digest size
+		 */
+		@Option(defaultValue = "0", description = "The maximum number of outputs in a digest (0 for no limit)")
+		int getActionDigestSize();
+
 	}
 
 }
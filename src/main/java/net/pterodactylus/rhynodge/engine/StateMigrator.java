@@ -0,0 +1,141 @@
+/*
+ * Rhynodge - StateMigrator.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Set;
+
+import net.pterodactylus.rhynodge.State;
+import net.pterodactylus.rhynodge.states.JournalStateStore;
+import net.pterodactylus.rhynodge.states.SingleFileStateStore;
+import net.pterodactylus.rhynodge.states.StateFileWriter.Durability;
+import net.pterodactylus.rhynodge.states.StateStore;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Sets;
+import com.lexicalscope.jewel.cli.CliFactory;
+import com.lexicalscope.jewel.cli.Option;
+
+/**
+ * Copies all states from a state directory that has been written by the
+ * {@code json} or {@code journal} state store into a single state file that
+ * can be used with the {@code single-file} state store. The original files
+ * are not changed.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class StateMigrator {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(StateMigrator.class);
+
+	/** The suffixes of the files written by the old state stores. */
+	private static final String[] STATE_FILE_SUFFIXES = { ".last.json", ".success.json", ".last.smile", ".success.smile", ".journal" };
+
+	/**
+	 * JVM main entry method.
+	 *
+	 * @param arguments
+	 *            Command-line arguments
+	 * @throws IOException
+	 *             if the state file can not be written
+	 */
+	public static void main(String... arguments) throws IOException {
+
+		/* parse command line. */
+		Parameters parameters = CliFactory.parseArguments(Parameters.class, arguments);
+		String stateDirectory = parameters.getStateDirectory();
+
+		/* the journal store reads both journals and plain state files. */
+		StateStore sourceStateStore = new JournalStateStore(stateDirectory, Durability.NONE);
+		StateStore targetStateStore = new SingleFileStateStore(Paths.get(stateDirectory, SingleFileStateStore.DEFAULT_FILE_NAME), Durability.NONE);
+		try {
+			int migratedReactions = 0;
+			for (String reactionName : findReactionNames(new File(stateDirectory))) {
+				State lastState = sourceStateStore.loadLastState(reactionName);
+				State lastSuccessfulState = sourceStateStore.loadLastSuccessfulState(reactionName);
+				boolean saved = true;
+				if (lastSuccessfulState != null) {
+					saved &= targetStateStore.saveState(reactionName, lastSuccessfulState, null);
+				}
+				if ((lastState != null) && !lastState.success()) {
+					saved &= targetStateStore.saveState(reactionName, lastState, lastSuccessfulState);
+				}
+				if (!saved) {
+					logger.warn(String.format("Could not migrate states of Reaction “%s”.", reactionName));
+					continue;
+				}
+				logger.info(String.format("Migrated states of Reaction “%s”.", reactionName));
+				++migratedReactions;
+			}
+			logger.info(String.format("Migrated %d Reaction(s).", migratedReactions));
+		} finally {
+			targetStateStore.close();
+			sourceStateStore.close();
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the names of all reactions that have state files in the given
+	 * directory.
+	 *
+	 * @param stateDirectory
+	 *            The directory containing the state files
+	 * @return The names of all reactions
+	 */
+	private static Set<String> findReactionNames(File stateDirectory) {
+		Set<String> reactionNames = Sets.newTreeSet();
+		String[] fileNames = stateDirectory.list();
+		if (fileNames == null) {
+			return reactionNames;
+		}
+		for (String fileName : fileNames) {
+			for (String stateFileSuffix : STATE_FILE_SUFFIXES) {
+				if (fileName.endsWith(stateFileSuffix)) {
+					reactionNames.add(fileName.substring(0, fileName.length() - stateFileSuffix.length()));
+				}
+			}
+		}
+		return reactionNames;
+	}
+
+	/**
+	 * Definition of the command-line parameters.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static interface Parameters {
+
+		/**
+		 * Returns the directory the states are stored in.
+		 *
+		 * @return The states directory
+		 */
+		@Option(defaultValue = "states", shortName = "s", description = "The directory the states are stored in")
+		String getStateDirectory();
+
+	}
+
+}
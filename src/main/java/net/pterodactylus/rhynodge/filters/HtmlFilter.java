@@ -19,6 +19,9 @@ package net.pterodactylus.rhynodge.filters;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
 import net.pterodactylus.rhynodge.Filter;
 import net.pterodactylus.rhynodge.State;
 import net.pterodactylus.rhynodge.states.FailedState;
@@ -30,6 +33,14 @@ import org.jsoup.nodes.Document;
 
 /**
  * {@link Filter} that converts a {@link HttpState} into an {@link HtmlState}.
+ * <p>
+ * The raw result of the HTTP state is decoded while it is parsed so that the
+ * decoded content never has to be held in memory as a whole. The raw result
+ * itself is not streamed from the server: the
+ * {@link net.pterodactylus.rhynodge.queries.HttpQuery} reads it completely,
+ * because the {@link net.pterodactylus.rhynodge.engine.ReactionRunner}
+ * compares its digest with the digest of the last content before any filter
+ * runs, so that unchanged pages are not parsed at all.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
@@ -44,8 +55,13 @@ public class HtmlFilter implements Filter {
 			return FailedState.from(state);
 		}
 		checkState(state instanceof HttpState, "state is not a HttpState but a %s", state.getClass().getName());
-		Document document = Jsoup.parse(((HttpState) state).content(), ((HttpState) state).uri());
-		return new HtmlState(((HttpState) state).uri(), document);
+		HttpState httpState = (HttpState) state;
+		try {
+			Document document = Jsoup.parse(new ByteArrayInputStream(httpState.rawResult()), httpState.charset(), httpState.uri());
+			return new HtmlState(httpState.uri(), document);
+		} catch (IOException ioe1) {
+			return new FailedState(ioe1);
+		}
 	}
 
 }
@@ -25,6 +25,7 @@ import net.pterodactylus.rhynodge.states.TorrentState;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
 
 /**
  * {@link Filter} implementation that parses a {@link TorrentState} from an
@@ -35,6 +36,30 @@ import org.jsoup.select.Elements;
  */
 public class KickAssTorrentsFilter extends TorrentSiteFilter {
 
+	/** Selector for the data rows. */
+	private static final Evaluator DATA_ROWS = compileSelector("table.data tr:gt(0)");
+
+	/** Selector for the name. */
+	private static final Evaluator NAME = compileSelector("div.torrentname a.normalgrey");
+
+	/** Selector for the size. */
+	private static final Evaluator SIZE = compileSelector("td:eq(1)");
+
+	/** Selector for the magnet link. */
+	private static final Evaluator MAGNET_LINK = compileSelector("a.imagnet");
+
+	/** Selector for the download link. */
+	private static final Evaluator DOWNLOAD_LINK = compileSelector("a.idownload:not(.partner1Button)");
+
+	/** Selector for the file count. */
+	private static final Evaluator FILE_COUNT = compileSelector("td:eq(2)");
+
+	/** Selector for the seed count. */
+	private static final Evaluator SEED_COUNT = compileSelector("td:eq(4)");
+
+	/** Selector for the leech count. */
+	private static final Evaluator LEECH_COUNT = compileSelector("td:eq(5)");
+
 	//
 	// TORRENTSITEFILTER METHODS
 	//
@@ -44,7 +69,7 @@ public class KickAssTorrentsFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected Elements getDataRows(Document document) {
-		return document.select("table.data").select("tr:gt(0)");
+		return selectAll(DATA_ROWS, document);
 	}
 
 	/**
@@ -52,7 +77,7 @@ public class KickAssTorrentsFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected String extractName(Element dataRow) {
-		return dataRow.select("div.torrentname a.normalgrey").text();
+		return selectText(NAME, dataRow);
 	}
 
 	/**
@@ -60,7 +85,7 @@ public class KickAssTorrentsFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected String extractSize(Element dataRow) {
-		return dataRow.select("td:eq(1)").text();
+		return selectText(SIZE, dataRow);
 	}
 
 	/**
@@ -68,7 +93,7 @@ public class KickAssTorrentsFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected String extractMagnetUri(Element dataRow) {
-		return dataRow.select("a.imagnet").attr("href");
+		return selectAttribute(MAGNET_LINK, "href", dataRow);
 	}
 
 	/**
@@ -76,7 +101,7 @@ public class KickAssTorrentsFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected String extractDownloadUri(Element dataRow) {
-		return dataRow.select("a.idownload:not(.partner1Button)").attr("href");
+		return selectAttribute(DOWNLOAD_LINK, "href", dataRow);
 	}
 
 	/**
@@ -84,7 +109,7 @@ public class KickAssTorrentsFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected int extractFileCount(Element dataRow) {
-		return Integer.valueOf(dataRow.select("td:eq(2)").text());
+		return Integer.valueOf(selectText(FILE_COUNT, dataRow));
 	}
 
 	/**
@@ -92,7 +117,7 @@ public class KickAssTorrentsFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected int extractSeedCount(Element dataRow) {
-		return Integer.valueOf(dataRow.select("td:eq(4)").text());
+		return Integer.valueOf(selectText(SEED_COUNT, dataRow));
 	}
 
 	/**
@@ -100,7 +125,7 @@ public class KickAssTorrentsFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected int extractLeechCount(Element dataRow) {
-		return Integer.valueOf(dataRow.select("td:eq(5)").text());
+		return Integer.valueOf(selectText(LEECH_COUNT, dataRow));
 	}
 
 }
@@ -22,6 +22,7 @@ import java.util.regex.Pattern;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
 
 /**
  * {@link TorrentSiteFilter} implementation that can parse
@@ -31,12 +32,39 @@ import org.jsoup.select.Elements;
  */
 public class PirateBayFilter extends TorrentSiteFilter {
 
+	/** Selector for the data rows. */
+	private static final Evaluator DATA_ROWS = compileSelector("table#searchResult tbody tr:has(.vertTh)");
+
+	/** Selector for the name. */
+	private static final Evaluator NAME = compileSelector(".detName a");
+
+	/** Selector for the description containing the size. */
+	private static final Evaluator DESCRIPTION = compileSelector(".detDesc");
+
+	/** Selector for the magnet link. */
+	private static final Evaluator MAGNET_LINK = compileSelector("a[href^=magnet:]");
+
+	/** Selector for the download link. */
+	private static final Evaluator DOWNLOAD_LINK = compileSelector("a[href^=//torrents.]");
+
+	/** Selector for the seed count. */
+	private static final Evaluator SEED_COUNT = compileSelector("td:eq(2)");
+
+	/** Selector for the leech count. */
+	private static final Evaluator LEECH_COUNT = compileSelector("td:eq(3)");
+
+	/** The pattern that separates the parts of the description. */
+	private static final Pattern DESCRIPTION_SEPARATOR = Pattern.compile(Pattern.quote(","));
+
+	/** The pattern that precedes the size. */
+	private static final Pattern SIZE_PREFIX = Pattern.compile(Pattern.quote("Size"));
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	protected Elements getDataRows(Document document) {
-		return document.select("table#searchResult tbody tr:has(.vertTh)");
+		return selectAll(DATA_ROWS, document);
 	}
 
 	/**
@@ -44,7 +72,7 @@ public class PirateBayFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected String extractName(Element dataRow) {
-		return dataRow.select(".detName a").text();
+		return selectText(NAME, dataRow);
 	}
 
 	/**
@@ -52,7 +80,7 @@ public class PirateBayFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected String extractSize(Element dataRow) {
-		return dataRow.select(".detDesc").text().split(Pattern.quote(","))[1].split(Pattern.quote("Size"))[1];
+		return SIZE_PREFIX.split(DESCRIPTION_SEPARATOR.split(selectText(DESCRIPTION, dataRow))[1])[1];
 	}
 
 	/**
@@ -60,7 +88,7 @@ public class PirateBayFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected String extractMagnetUri(Element dataRow) {
-		return dataRow.select("a[href^=magnet:]").attr("href");
+		return selectAttribute(MAGNET_LINK, "href", dataRow);
 	}
 
 	/**
@@ -68,7 +96,7 @@ public class PirateBayFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected String extractDownloadUri(Element dataRow) {
-		return dataRow.select("a[href^=//torrents.]").attr("href");
+		return selectAttribute(DOWNLOAD_LINK, "href", dataRow);
 	}
 
 	/**
@@ -84,7 +112,7 @@ public class PirateBayFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected int extractSeedCount(Element dataRow) {
-		return Integer.valueOf(dataRow.select("td:eq(2)").text());
+		return Integer.valueOf(selectText(SEED_COUNT, dataRow));
 	}
 
 	/**
@@ -92,7 +120,7 @@ public class PirateBayFilter extends TorrentSiteFilter {
 	 */
 	@Override
 	protected int extractLeechCount(Element dataRow) {
-		return Integer.valueOf(dataRow.select("td:eq(3)").text());
+		return Integer.valueOf(selectText(LEECH_COUNT, dataRow));
 	}
 
 }
@@ -34,12 +34,20 @@ import net.pterodactylus.rhynodge.states.TorrentState.TorrentFile;
 
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
+import org.jsoup.select.Collector;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
 
 /**
  * {@link Filter} implementation that parses a {@link TorrentState} from an
- * {@link HtmlState} which was generated by a {@link HttpQuery} to
- * {@code kickasstorrents.ph}.
+ * {@link HtmlState} which was generated by a {@link HttpQuery} to a torrent
+ * site.
+ * <p>
+ * Subclasses locate the data rows and their fields using CSS selectors that
+ * they {@link #compileSelector(String) compile} once, when the class is
+ * loaded; the fields of a row are taken from the first matching element so
+ * that each field only needs to search its row until the first match.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
@@ -61,6 +69,13 @@ public abstract class TorrentSiteFilter implements Filter {
 		/* iterate over all rows. */
 		Elements dataRows = getDataRows(document);
 		TorrentState torrentState = new TorrentState();
+		URI baseUri;
+		try {
+			baseUri = new URI(((HtmlState) state).uri());
+		} catch (URISyntaxException use1) {
+			/* ignore; if uri was wrong, we wouldn’t be here. */
+			return torrentState;
+		}
 		for (Element dataRow : dataRows) {
 			String name = extractName(dataRow);
 			String size = extractSize(dataRow);
@@ -71,14 +86,12 @@ public abstract class TorrentSiteFilter implements Filter {
 			int leechCount = extractLeechCount(dataRow);
 			try {
 				if ((downloadUri != null) && (downloadUri.length() > 0)) {
-					downloadUri = new URI(((HtmlState) state).uri()).resolve(URLEncoder.encode(downloadUri, "UTF-8").replace("%2F", "/")).toString();
+					downloadUri = baseUri.resolve(URLEncoder.encode(downloadUri, "UTF-8").replace("%2F", "/")).toString();
 				} else {
 					downloadUri = null;
 				}
 				TorrentFile torrentFile = new TorrentFile(name, size, magnetUri, downloadUri, fileCount, seedCount, leechCount);
 				torrentState.addTorrentFile(torrentFile);
-			} catch (URISyntaxException use1) {
-				/* ignore; if uri was wrong, we wouldn’t be here. */
 			} catch (UnsupportedEncodingException uee1) {
 				/* ignore, all JVMs can do UTF-8. */
 			}
@@ -87,6 +100,71 @@ public abstract class TorrentSiteFilter implements Filter {
 		return torrentState;
 	}
 
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Compiles the given CSS selector. Filters should compile their selectors
+	 * once and reuse them for every row instead of parsing the selector again
+	 * for each row.
+	 *
+	 * @param cssQuery
+	 *            The CSS selector to compile
+	 * @return The compiled selector
+	 */
+	protected static Evaluator compileSelector(String cssQuery) {
+		return QueryParser.parse(cssQuery);
+	}
+
+	/**
+	 * Returns all elements below the given element that match the given
+	 * selector.
+	 *
+	 * @param selector
+	 *            The compiled selector
+	 * @param element
+	 *            The element to search
+	 * @return All matching elements
+	 */
+	protected static Elements selectAll(Evaluator selector, Element element) {
+		return Collector.collect(selector, element);
+	}
+
+	/**
+	 * Returns the combined text of the first element below the given element
+	 * that matches the given selector.
+	 *
+	 * @param selector
+	 *            The compiled selector
+	 * @param element
+	 *            The element to search
+	 * @return The text of the first matching element, or an empty string if
+	 *         no element matches
+	 */
+	protected static String selectText(Evaluator selector, Element element) {
+		Element matchingElement = Collector.findFirst(selector, element);
+		return (matchingElement != null) ? matchingElement.text() : "";
+	}
+
+	/**
+	 * Returns the value of the given attribute of the first element below the
+	 * given element that matches the given selector.
+	 *
+	 * @param selector
+	 *            The compiled selector
+	 * @param attributeName
+	 *            The name of the attribute
+	 * @param element
+	 *            The element to search
+	 * @return The value of the attribute, or an empty string if no element
+	 *         matches or the element does not have the attribute
+	 */
+	protected static String selectAttribute(Evaluator selector, String attributeName, Element element) {
+		Element matchingElement = Collector.findFirst(selector, element);
+		return (matchingElement != null) ? matchingElement.attr(attributeName) : "";
+	}
+
 	//
 	// ABSTRACT METHODS
 	//
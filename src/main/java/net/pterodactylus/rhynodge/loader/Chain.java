@@ -20,6 +20,8 @@ package net.pterodactylus.rhynodge.loader;
 import java.util.ArrayList;
 import java.util.List;
 
+import net.pterodactylus.rhynodge.triggers.RetentionPolicy;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -164,6 +166,110 @@ public class Chain {
 
 	}
 
+	/**
+	 * Retention model that limits the history a trigger keeps.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static class Retention {
+
+		/** The maximum number of entries to keep. */
+		@JsonProperty
+		private int maxEntries;
+
+		/** The maximum age of an entry (in seconds). */
+		@JsonProperty
+		private long maxAge;
+
+		/** The number of most recent seasons to keep. */
+		@JsonProperty
+		private int maxSeasons;
+
+		/** The number of removed entries the seen filter is sized for. */
+		@JsonProperty
+		private int seenFilterSize;
+
+		/** The false positive rate the seen filter is sized for. */
+		@JsonProperty
+		private double seenFilterFalsePositiveRate = RetentionPolicy.DEFAULT_SEEN_FILTER_FALSE_POSITIVE_RATE;
+
+		/**
+		 * Returns the maximum number of entries to keep.
+		 *
+		 * @return The maximum number of entries to keep, or {@code 0} for no
+		 *         limit
+		 */
+		public int maxEntries() {
+			return maxEntries;
+		}
+
+		/**
+		 * Returns the maximum age of an entry.
+		 *
+		 * @return The maximum age of an entry (in seconds), or {@code 0} for
+		 *         no limit
+		 */
+		public long maxAge() {
+			return maxAge;
+		}
+
+		/**
+		 * Returns the number of most recent seasons to keep.
+		 *
+		 * @return The number of seasons to keep, or {@code 0} for no limit
+		 */
+		public int maxSeasons() {
+			return maxSeasons;
+		}
+
+		/**
+		 * Returns the number of removed entries the seen filter is sized for.
+		 *
+		 * @return The size of the seen filter, or {@code 0} to not use a seen
+		 *         filter
+		 */
+		public int seenFilterSize() {
+			return seenFilterSize;
+		}
+
+		/**
+		 * Returns the false positive rate the seen filter is sized for.
+		 *
+		 * @return The false positive rate of the seen filter
+		 */
+		public double seenFilterFalsePositiveRate() {
+			return seenFilterFalsePositiveRate;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			int hashCode = 0;
+			hashCode ^= maxEntries;
+			hashCode ^= (int) (maxAge ^ (maxAge >>> 32));
+			hashCode ^= maxSeasons << 16;
+			hashCode ^= seenFilterSize << 8;
+			long falsePositiveRateBits = Double.doubleToLongBits(seenFilterFalsePositiveRate);
+			hashCode ^= (int) (falsePositiveRateBits ^ (falsePositiveRateBits >>> 32));
+			return hashCode;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Retention)) {
+				return false;
+			}
+			Retention retention = (Retention) object;
+			return (maxEntries == retention.maxEntries) && (maxAge == retention.maxAge) && (maxSeasons == retention.maxSeasons) && (seenFilterSize == retention.seenFilterSize) && (Double.compare(seenFilterFalsePositiveRate, retention.seenFilterFalsePositiveRate) == 0);
+		}
+
+	}
+
 	/** Whether this chain is enabled. */
 	@JsonProperty
 	private boolean enabled;
@@ -196,6 +302,10 @@ public class Chain {
 	@JsonProperty
 	private int updateInterval;
 
+	/** The optional retention of the trigger’s history. */
+	@JsonProperty
+	private Retention retention;
+
 	/**
 	 * Returns whether this chain is enabled.
 	 *
@@ -268,6 +378,16 @@ public class Chain {
 		return updateInterval;
 	}
 
+	/**
+	 * Returns the retention of the trigger’s history.
+	 *
+	 * @return The retention of the trigger’s history, or {@code null} if the
+	 *         history is not limited
+	 */
+	public Retention retention() {
+		return retention;
+	}
+
 	//
 	// OBJECT METHODS
 	//
@@ -290,6 +410,9 @@ public class Chain {
 		}
 		hashCode ^= action.hashCode();
 		hashCode ^= updateInterval;
+		if (retention != null) {
+			hashCode ^= retention.hashCode();
+		}
 		return hashCode;
 	}
 
@@ -331,6 +454,9 @@ public class Chain {
 		if (updateInterval != chain.updateInterval) {
 			return false;
 		}
+		if ((retention != null) ? !retention.equals(chain.retention) : (chain.retention != null)) {
+			return false;
+		}
 		return true;
 	}
 
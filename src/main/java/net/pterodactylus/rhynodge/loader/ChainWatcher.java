@@ -17,14 +17,31 @@
 
 package net.pterodactylus.rhynodge.loader;
 
-import java.io.File;
-import java.io.FilenameFilter;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
 
 import net.pterodactylus.rhynodge.Reaction;
@@ -37,14 +54,25 @@ import org.apache.log4j.Logger;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Maps;
+import com.google.common.base.Optional;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
 import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * Watches a directory for chain configuration files and loads and unloads
  * {@link Reaction}s from the {@link Engine}.
+ * <p>
+ * The directory is watched using a {@link WatchService} so that changes are
+ * picked up right away and an unchanged directory does not cause any work. If
+ * the directory can not be watched, it is scanned periodically instead. Only
+ * files whose modification time, size, and content have changed are parsed
+ * again.
+ * <p>
+ * When the watcher is started, all configuration files are parsed and the
+ * states of all enabled chains are loaded in parallel; the watcher is running
+ * once all chains have been loaded into the engine.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
@@ -56,6 +84,27 @@ public class ChainWatcher extends AbstractExecutionThreadService {
 	/** The JSON object mapper. */
 	private static final ObjectMapper objectMapper = new ObjectMapper();
 
+	/** The suffix of configuration files. */
+	private static final String CONFIGURATION_FILE_SUFFIX = ".json";
+
+	/**
+	 * The time between two scans if the directory can not be watched (in
+	 * seconds).
+	 */
+	private static final long POLL_INTERVAL = 5;
+
+	/**
+	 * The number of files below which files are read by a single fork-join
+	 * task on startup.
+	 */
+	private static final int PARALLEL_READ_THRESHOLD = 16;
+
+	/**
+	 * The time to wait for further changes after a change has been detected
+	 * (in milliseconds), so that a file being written is only parsed once.
+	 */
+	private static final long SETTLE_TIME = 100;
+
 	/** The reaction loader. */
 	private final ReactionLoader reactionLoader = new ReactionLoader();
 
@@ -65,6 +114,12 @@ public class ChainWatcher extends AbstractExecutionThreadService {
 	/** The directory to watch for chain configuration files. */
 	private final String directory;
 
+	/** The known configuration files. */
+	private final Map<Path, ChainFile> chainFiles = new HashMap<Path, ChainFile>();
+
+	/** The chains loaded into the engine, by reaction name. */
+	private final Map<String, LoadedChain> loadedChains = new HashMap<String, LoadedChain>();
+
 	/**
 	 * Creates a new chain watcher.
 	 *
@@ -84,136 +139,427 @@ public class ChainWatcher extends AbstractExecutionThreadService {
 
 	/**
 	 * {@inheritDoc}
+	 * <p>
+	 * Reads and parses all configuration files and loads the states of all
+	 * enabled chains in parallel, then loads the chains into the engine.
+	 * Undelivered outputs of chains whose configuration file does not exist
+	 * anymore are discarded.
 	 */
 	@Override
-	protected void run() throws Exception {
-
-		/* loaded chains. */
-		final Map<String, Chain> loadedChains = new HashMap<String, Chain>();
-
-		while (isRunning()) {
-
-			/* check if directory is there. */
-			File directoryFile = new File(directory);
-			if (!directoryFile.exists() || !directoryFile.isDirectory() || !directoryFile.canRead()) {
-				Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
-				continue;
-			}
-
-			/* list all files, scan for configuration files. */
-			logger.debug(String.format("Scanning %s...", directory));
-			File[] configurationFiles = directoryFile.listFiles(new FilenameFilter() {
+	protected void startUp() throws Exception {
+		Path directoryPath = Paths.get(directory);
+		if (!Files.isDirectory(directoryPath) || !Files.isReadable(directoryPath)) {
+			return;
+		}
+		long startTime = System.currentTimeMillis();
+		List<Path> configurationFiles = new ArrayList<Path>(listConfigurationFiles(directoryPath));
+		ForkJoinPool forkJoinPool = new ForkJoinPool();
+		try {
 
-				@Override
-				public boolean accept(File dir, String name) {
-					return name.endsWith(".json");
-				}
-			});
-			logger.debug(String.format("Found %d configuration file(s), parsing...", configurationFiles.length));
+			/* read and parse all configuration files. */
+			ConcurrentMap<Path, Optional<ChainFile>> readChainFiles = new ConcurrentHashMap<Path, Optional<ChainFile>>();
+			forkJoinPool.invoke(new ChainFileReader(configurationFiles, readChainFiles));
+			applyChainFiles(readChainFiles);
+			logger.debug(String.format("Parsed %d configuration file(s) in %d ms.", configurationFiles.size(), System.currentTimeMillis() - startTime));
+
+			/* load the states of all enabled chains. */
+			long preloadStartTime = System.currentTimeMillis();
+			int preloadedChains = engine.preloadStates(enabledChainFiles().keySet(), forkJoinPool);
+			logger.debug(String.format("Loaded states of %d Chain(s) in %d ms.", preloadedChains, System.currentTimeMillis() - preloadStartTime));
+		} finally {
+			forkJoinPool.shutdown();
+		}
+		updateReactions();
 
-			/* now parse all XML files. */
-			Map<String, Chain> chains = new HashMap<String, Chain>();
-			for (File configurationFile : configurationFiles) {
+		/* outputs of chains that do not exist anymore can not be delivered. */
+		Set<String> reactionNames = new HashSet<String>();
+		for (Path configurationFile : configurationFiles) {
+			reactionNames.add(getReactionName(configurationFile.getFileName().toString()));
+		}
+		engine.discardUndeliveredOutputs(reactionNames);
+		logger.info(String.format("Loaded %d Chain(s) in %d ms.", loadedChains.size(), System.currentTimeMillis() - startTime));
+	}
 
-				/* parse XML file. */
-				Chain chain = parseConfigurationFile(configurationFile);
-				if (chain == null) {
-					logger.warn(String.format("Could not parse %s.", configurationFile));
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void run() throws Exception {
+		Path directoryPath = Paths.get(directory);
+		WatchService watchService = null;
+		boolean polling = false;
+		Set<Path> changedFiles = null;
+		try {
+			while (isRunning()) {
+
+				/* check if directory is there. */
+				if (!Files.isDirectory(directoryPath) || !Files.isReadable(directoryPath)) {
+					watchService = closeWatchService(watchService);
+					polling = false;
+					changedFiles = null;
+					Uninterruptibles.sleepUninterruptibly(1, TimeUnit.SECONDS);
 					continue;
 				}
 
-				/* dump chain */
-				logger.debug(String.format(" Enabled: %s", chain.enabled()));
+				/* watch the directory, or fall back to scanning it. */
+				if ((watchService == null) && !polling) {
+					watchService = watchDirectory(directoryPath);
+					polling = (watchService == null);
+					changedFiles = null;
+				}
 
-				if (chain.watcher() != null) {
-					logger.debug(String.format("Reaction: %s", chain.watcher().name()));
+				/* update the changed files, or all files. */
+				boolean chainsChanged;
+				if (changedFiles == null) {
+					logger.debug(String.format("Scanning %s...", directory));
+					chainsChanged = updateChainFiles(listConfigurationFiles(directoryPath), true);
 				} else {
-					logger.debug(String.format(" Query: %s", chain.query().name()));
-					for (Parameter parameter : chain.query().parameters()) {
-						logger.debug(String.format("  Parameter: %s=%s", parameter.name(), parameter.value()));
-					}
-					for (Part filter : chain.filters()) {
-						logger.debug(String.format(" Filter: %s", filter.name()));
-						for (Parameter parameter : filter.parameters()) {
-							logger.debug(String.format("  Parameter: %s=%s", parameter.name(), parameter.value()));
-						}
-					}
-					logger.debug(String.format(" Trigger: %s", chain.trigger().name()));
-					for (Parameter parameter : chain.trigger().parameters()) {
-						logger.debug(String.format("  Parameter: %s=%s", parameter.name(), parameter.value()));
-					}
+					chainsChanged = updateChainFiles(changedFiles, false);
 				}
-				logger.debug(String.format(" Action: %s", chain.action().name()));
-				for (Parameter parameter : chain.action().parameters()) {
-					logger.debug(String.format("  Parameter: %s=%s", parameter.name(), parameter.value()));
+				if (chainsChanged) {
+					updateReactions();
 				}
 
-				chains.put(getReactionName(configurationFile.getName()), chain);
+				/* wait for changes. */
+				if (watchService != null) {
+					changedFiles = waitForChanges(watchService, directoryPath);
+					if (changedFiles == null) {
+						/* events were lost or the directory is gone, start over. */
+						watchService = closeWatchService(watchService);
+					}
+				} else {
+					Uninterruptibles.sleepUninterruptibly(POLL_INTERVAL, TimeUnit.SECONDS);
+					changedFiles = null;
+				}
 			}
+		} finally {
+			closeWatchService(watchService);
+		}
+	}
 
-			/* filter enabled chains. */
-			Map<String, Chain> enabledChains = Maps.filterEntries(chains, new Predicate<Entry<String, Chain>>() {
-
-				@Override
-				public boolean apply(Entry<String, Chain> chainEntry) {
-					return chainEntry.getValue().enabled();
-				}
-			});
-			logger.debug(String.format("Found %d enabled Chain(s).", enabledChains.size()));
+	//
+	// PRIVATE METHODS
+	//
 
-			/* check for removed chains. */
-			Set<String> chainsToRemove = new HashSet<String>();
-			for (Entry<String, Chain> loadedChain : loadedChains.entrySet()) {
+	/**
+	 * Updates the known configuration files from the given files. A file that
+	 * does not exist anymore is removed; a file whose content has changed is
+	 * parsed again.
+	 *
+	 * @param files
+	 *            The files to update
+	 * @param trustAttributes
+	 *            {@code true} to assume that a file whose modification time
+	 *            and size have not changed is unchanged, {@code false} to
+	 *            always compare the content
+	 * @return {@code true} if a chain has changed, {@code false} otherwise
+	 */
+	private boolean updateChainFiles(Collection<Path> files, boolean trustAttributes) {
+		Map<Path, Optional<ChainFile>> readChainFiles = new HashMap<Path, Optional<ChainFile>>();
+		for (Path file : files) {
+			if (file.getFileName().toString().endsWith(CONFIGURATION_FILE_SUFFIX)) {
+				readChainFiles.put(file, readChainFile(file, chainFiles.get(file), trustAttributes));
+			}
+		}
+		return applyChainFiles(readChainFiles);
+	}
 
-				/* skip chains that still exist. */
-				if (enabledChains.containsKey(loadedChain.getKey())) {
-					continue;
-				}
+	/**
+	 * Stores the given configuration files as the known configuration files.
+	 *
+	 * @param readChainFiles
+	 *            The configuration files that have been read, or
+	 *            {@link Optional#absent()} for files that do not exist
+	 *            anymore
+	 * @return {@code true} if a chain has changed, {@code false} otherwise
+	 */
+	private boolean applyChainFiles(Map<Path, Optional<ChainFile>> readChainFiles) {
+		boolean chainsChanged = false;
+		for (Entry<Path, Optional<ChainFile>> readChainFile : readChainFiles.entrySet()) {
+			if (!readChainFile.getValue().isPresent()) {
+				chainsChanged |= (chainFiles.remove(readChainFile.getKey()) != null);
+				continue;
+			}
+			ChainFile chainFile = readChainFile.getValue().get();
+			ChainFile previousChainFile = chainFiles.put(readChainFile.getKey(), chainFile);
+			chainsChanged |= (previousChainFile == null) || (previousChainFile.chain() != chainFile.chain());
+		}
+		return chainsChanged;
+	}
 
-				logger.info(String.format("Removing Chain: %s", loadedChain.getKey()));
-				engine.removeReaction(loadedChain.getKey());
-				chainsToRemove.add(loadedChain.getKey());
+	/**
+	 * Returns all enabled chains.
+	 *
+	 * @return The configuration files of all enabled chains, by reaction name
+	 */
+	private Map<String, ChainFile> enabledChainFiles() {
+		Map<String, ChainFile> enabledChainFiles = new HashMap<String, ChainFile>();
+		for (Entry<Path, ChainFile> chainFile : chainFiles.entrySet()) {
+			Chain chain = chainFile.getValue().chain();
+			if ((chain != null) && chain.enabled()) {
+				enabledChainFiles.put(getReactionName(chainFile.getKey().getFileName().toString()), chainFile.getValue());
 			}
+		}
+		return enabledChainFiles;
+	}
 
-			/* remove removed chains from loaded chains. */
-			for (String reactionName : chainsToRemove) {
-				loadedChains.remove(reactionName);
+	/**
+	 * Loads new chains into the engine, reloads changed chains, and removes
+	 * chains that do not exist anymore or that have been disabled. A chain is
+	 * considered changed if the content of its configuration file has
+	 * changed; only the parts of a changed chain whose definition has changed
+	 * are created again.
+	 */
+	private void updateReactions() {
+
+		/* collect all enabled chains. */
+		Map<String, ChainFile> enabledChainFiles = enabledChainFiles();
+		logger.debug(String.format("Found %d enabled Chain(s).", enabledChainFiles.size()));
+
+		/* check for removed chains. */
+		Set<String> chainsToRemove = new HashSet<String>();
+		for (String reactionName : loadedChains.keySet()) {
+
+			/* skip chains that still exist. */
+			if (enabledChainFiles.containsKey(reactionName)) {
+				continue;
 			}
 
-			/* check for new chains. */
-			for (Entry<String, Chain> enabledChain : enabledChains.entrySet()) {
+			logger.info(String.format("Removing Chain: %s", reactionName));
+			engine.removeReaction(reactionName);
+			chainsToRemove.add(reactionName);
+		}
 
-				/* skip already loaded chains. */
-				if (loadedChains.containsValue(enabledChain.getValue())) {
-					continue;
-				}
+		/* remove removed chains from loaded chains. */
+		for (String reactionName : chainsToRemove) {
+			loadedChains.remove(reactionName);
+		}
+
+		/* check for new and changed chains. */
+		for (Entry<String, ChainFile> enabledChainFile : enabledChainFiles.entrySet()) {
+			String reactionName = enabledChainFile.getKey();
+			ChainFile chainFile = enabledChainFile.getValue();
+			LoadedChain loadedChain = loadedChains.get(reactionName);
 
-				logger.info(String.format("Loading new Chain: %s", enabledChain.getKey()));
+			/* skip unchanged chains. */
+			if ((loadedChain != null) && loadedChain.contentHash().equals(chainFile.contentHash())) {
+				continue;
+			}
 
-				Reaction reaction = reactionLoader.loadReaction(enabledChain.getValue());
-				engine.addReaction(enabledChain.getKey(), reaction);
-				loadedChains.put(enabledChain.getKey(), enabledChain.getValue());
+			try {
+				Reaction reaction;
+				if (loadedChain == null) {
+					logger.info(String.format("Loading new Chain: %s", reactionName));
+					reaction = reactionLoader.loadReaction(chainFile.chain());
+					engine.addReaction(reactionName, reaction);
+				} else {
+					logger.info(String.format("Reloading changed Chain: %s", reactionName));
+					reaction = reactionLoader.reloadReaction(chainFile.chain(), loadedChain.chain(), loadedChain.reaction());
+					engine.replaceReaction(reactionName, reaction);
+				}
+				loadedChains.put(reactionName, new LoadedChain(chainFile.contentHash(), chainFile.chain(), reaction));
+			} catch (LoaderException le1) {
+				logger.warn(String.format("Could not load Chain %s!", reactionName), le1);
 			}
+		}
+	}
 
-			/* wait before checking again. */
-			Uninterruptibles.sleepUninterruptibly(5, TimeUnit.SECONDS);
+	/**
+	 * Waits for changes in the watched directory.
+	 *
+	 * @param watchService
+	 *            The watch service of the directory
+	 * @param directoryPath
+	 *            The watched directory
+	 * @return The changed files (which may be empty if nothing changed for a
+	 *         while), or {@code null} if the directory has to be scanned
+	 *         again completely
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	private static Set<Path> waitForChanges(WatchService watchService, Path directoryPath) throws InterruptedException {
+		Set<Path> changedFiles = new HashSet<Path>();
+		WatchKey watchKey = watchService.poll(1, TimeUnit.SECONDS);
+		while (watchKey != null) {
+			for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+				if (watchEvent.kind() == OVERFLOW) {
+					logger.debug(String.format("Lost events for %s.", directoryPath));
+					return null;
+				}
+				changedFiles.add(directoryPath.resolve((Path) watchEvent.context()));
+			}
+			if (!watchKey.reset()) {
+				logger.debug(String.format("Can not watch %s anymore.", directoryPath));
+				return null;
+			}
+			watchKey = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
 		}
+		return changedFiles;
+	}
+
+	/**
+	 * Lists all configuration files in the given directory, including the
+	 * known files so that removed files are detected.
+	 *
+	 * @param directoryPath
+	 *            The directory to list
+	 * @return All configuration files
+	 * @throws IOException
+	 *             if the directory can not be listed
+	 */
+	private Set<Path> listConfigurationFiles(Path directoryPath) throws IOException {
+		Set<Path> configurationFiles = new HashSet<Path>(chainFiles.keySet());
+		DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directoryPath, "*" + CONFIGURATION_FILE_SUFFIX);
+		try {
+			for (Path configurationFile : directoryStream) {
+				configurationFiles.add(configurationFile);
+			}
+		} finally {
+			directoryStream.close();
+		}
+		logger.debug(String.format("Found %d configuration file(s).", configurationFiles.size()));
+		return configurationFiles;
 	}
 
 	//
 	// STATIC METHODS
 	//
 
+	/**
+	 * Reads the given configuration file. If the content of the file has not
+	 * changed, the given chain file is returned with updated attributes; if it
+	 * has changed, the file is parsed again.
+	 *
+	 * @param file
+	 *            The configuration file to read
+	 * @param chainFile
+	 *            The configuration file as it was last read (may be
+	 *            {@code null})
+	 * @param trustAttributes
+	 *            {@code true} to assume that a file whose modification time
+	 *            and size have not changed is unchanged, {@code false} to
+	 *            always compare the content
+	 * @return The read configuration file, or {@link Optional#absent()} if
+	 *         the file does not exist anymore or can not be read
+	 */
+	private static Optional<ChainFile> readChainFile(Path file, ChainFile chainFile, boolean trustAttributes) {
+		try {
+			if (!Files.isRegularFile(file)) {
+				return Optional.absent();
+			}
+			long lastModified = Files.getLastModifiedTime(file).toMillis();
+			long size = Files.size(file);
+			if (trustAttributes && (chainFile != null) && (chainFile.lastModified() == lastModified) && (chainFile.size() == size)) {
+				return Optional.of(chainFile);
+			}
+			byte[] content = Files.readAllBytes(file);
+			HashCode contentHash = Hashing.sha256().hashBytes(content);
+			if ((chainFile != null) && chainFile.contentHash().equals(contentHash)) {
+				return Optional.of(new ChainFile(lastModified, size, contentHash, chainFile.chain()));
+			}
+			logger.debug(String.format("Parsing %s...", file));
+			Chain chain = parseConfigurationFile(file, content);
+			if (chain == null) {
+				logger.warn(String.format("Could not parse %s.", file));
+			} else {
+				dumpChain(chain);
+			}
+			return Optional.of(new ChainFile(lastModified, size, contentHash, chain));
+		} catch (IOException ioe1) {
+			logger.info(String.format("Could not read %s.", file));
+			return Optional.absent();
+		}
+	}
+
+	/**
+	 * Creates a watch service for the given directory.
+	 *
+	 * @param directoryPath
+	 *            The directory to watch
+	 * @return The watch service, or {@code null} if the directory can not be
+	 *         watched
+	 */
+	private static WatchService watchDirectory(Path directoryPath) {
+		try {
+			WatchService watchService = directoryPath.getFileSystem().newWatchService();
+			try {
+				directoryPath.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+				return watchService;
+			} catch (IOException ioe1) {
+				closeWatchService(watchService);
+				throw ioe1;
+			}
+		} catch (IOException ioe1) {
+			logger.info(String.format("Can not watch %s, scanning it every %d seconds.", directoryPath, POLL_INTERVAL), ioe1);
+		} catch (UnsupportedOperationException uoe1) {
+			logger.info(String.format("Can not watch %s, scanning it every %d seconds.", directoryPath, POLL_INTERVAL), uoe1);
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the given watch service, ignoring any errors.
+	 *
+	 * @param watchService
+	 *            The watch service to close (may be {@code null})
+	 * @return {@code null}
+	 */
+	private static WatchService closeWatchService(WatchService watchService) {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException ioe1) {
+				logger.debug("Could not close watch service.", ioe1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Logs the given chain.
+	 *
+	 * @param chain
+	 *            The chain to log
+	 */
+	private static void dumpChain(Chain chain) {
+		logger.debug(String.format(" Enabled: %s", chain.enabled()));
+
+		if (chain.watcher() != null) {
+			logger.debug(String.format("Reaction: %s", chain.watcher().name()));
+		} else {
+			logger.debug(String.format(" Query: %s", chain.query().name()));
+			for (Parameter parameter : chain.query().parameters()) {
+				logger.debug(String.format("  Parameter: %s=%s", parameter.name(), parameter.value()));
+			}
+			for (Part filter : chain.filters()) {
+				logger.debug(String.format(" Filter: %s", filter.name()));
+				for (Parameter parameter : filter.parameters()) {
+					logger.debug(String.format("  Parameter: %s=%s", parameter.name(), parameter.value()));
+				}
+			}
+			logger.debug(String.format(" Trigger: %s", chain.trigger().name()));
+			for (Parameter parameter : chain.trigger().parameters()) {
+				logger.debug(String.format("  Parameter: %s=%s", parameter.name(), parameter.value()));
+			}
+		}
+		logger.debug(String.format(" Action: %s", chain.action().name()));
+		for (Parameter parameter : chain.action().parameters()) {
+			logger.debug(String.format("  Parameter: %s=%s", parameter.name(), parameter.value()));
+		}
+	}
+
 	/**
 	 * Parses the given configuration file into a {@link Chain}.
 	 *
 	 * @param configurationFile
 	 *            The configuration file to parse
+	 * @param content
+	 *            The content of the configuration file
 	 * @return The parsed chain
 	 */
-	private static Chain parseConfigurationFile(File configurationFile) {
+	private static Chain parseConfigurationFile(Path configurationFile, byte[] content) {
 		try {
-			return objectMapper.readValue(configurationFile, Chain.class);
+			return objectMapper.readValue(content, Chain.class);
 		} catch (JsonParseException jpe1) {
 			logger.warn(String.format("Could not parse %s.", configurationFile), jpe1);
 		} catch (JsonMappingException jme1) {
@@ -235,4 +581,190 @@ public class ChainWatcher extends AbstractExecutionThreadService {
 		return (filename.lastIndexOf(".") > -1) ? filename.substring(0, filename.lastIndexOf(".")) : filename;
 	}
 
+	/**
+	 * Reads configuration files in parallel, splitting the files between
+	 * fork-join tasks.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private class ChainFileReader extends RecursiveAction {
+
+		/** The files to read. */
+		private final List<Path> files;
+
+		/** The read configuration files. */
+		private final ConcurrentMap<Path, Optional<ChainFile>> readChainFiles;
+
+		/**
+		 * Creates a new chain file reader.
+		 *
+		 * @param files
+		 *            The files to read
+		 * @param readChainFiles
+		 *            The map to store the read configuration files in
+		 */
+		public ChainFileReader(List<Path> files, ConcurrentMap<Path, Optional<ChainFile>> readChainFiles) {
+			this.files = files;
+			this.readChainFiles = readChainFiles;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * The known configuration files are not changed while the files are
+		 * read, so they can be accessed without synchronization.
+		 */
+		@Override
+		protected void compute() {
+			if (files.size() <= PARALLEL_READ_THRESHOLD) {
+				for (Path file : files) {
+					readChainFiles.put(file, readChainFile(file, chainFiles.get(file), true));
+				}
+				return;
+			}
+			int middle = files.size() / 2;
+			invokeAll(new ChainFileReader(files.subList(0, middle), readChainFiles), new ChainFileReader(files.subList(middle, files.size()), readChainFiles));
+		}
+
+	}
+
+	/**
+	 * A configuration file as it was last read.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class ChainFile {
+
+		/** The modification time of the file (in milliseconds). */
+		private final long lastModified;
+
+		/** The size of the file. */
+		private final long size;
+
+		/** The hash of the content of the file. */
+		private final HashCode contentHash;
+
+		/** The parsed chain. */
+		private final Chain chain;
+
+		/**
+		 * Creates a new chain file.
+		 *
+		 * @param lastModified
+		 *            The modification time of the file (in milliseconds)
+		 * @param size
+		 *            The size of the file
+		 * @param contentHash
+		 *            The hash of the content of the file
+		 * @param chain
+		 *            The parsed chain, or {@code null} if the file could not
+		 *            be parsed
+		 */
+		public ChainFile(long lastModified, long size, HashCode contentHash, Chain chain) {
+			this.lastModified = lastModified;
+			this.size = size;
+			this.contentHash = contentHash;
+			this.chain = chain;
+		}
+
+		/**
+		 * Returns the modification time of the file.
+		 *
+		 * @return The modification time of the file (in milliseconds)
+		 */
+		public long lastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Returns the size of the file.
+		 *
+		 * @return The size of the file
+		 */
+		public long size() {
+			return size;
+		}
+
+		/**
+		 * Returns the hash of the content of the file.
+		 *
+		 * @return The hash of the content
+		 */
+		public HashCode contentHash() {
+			return contentHash;
+		}
+
+		/**
+		 * Returns the parsed chain.
+		 *
+		 * @return The parsed chain, or {@code null} if the file could not be
+		 *         parsed
+		 */
+		public Chain chain() {
+			return chain;
+		}
+
+	}
+
+	/**
+	 * A chain that has been loaded into the engine.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class LoadedChain {
+
+		/** The hash of the content of the chain’s configuration file. */
+		private final HashCode contentHash;
+
+		/** The chain. */
+		private final Chain chain;
+
+		/** The reaction created from the chain. */
+		private final Reaction reaction;
+
+		/**
+		 * Creates a new loaded chain.
+		 *
+		 * @param contentHash
+		 *            The hash of the content of the chain’s configuration file
+		 * @param chain
+		 *            The chain
+		 * @param reaction
+		 *            The reaction created from the chain
+		 */
+		public LoadedChain(HashCode contentHash, Chain chain, Reaction reaction) {
+			this.contentHash = contentHash;
+			this.chain = chain;
+			this.reaction = reaction;
+		}
+
+		/**
+		 * Returns the hash of the content of the chain’s configuration file.
+		 *
+		 * @return The hash of the content
+		 */
+		public HashCode contentHash() {
+			return contentHash;
+		}
+
+		/**
+		 * Returns the chain.
+		 *
+		 * @return The chain
+		 */
+		public Chain chain() {
+			return chain;
+		}
+
+		/**
+		 * Returns the reaction created from the chain.
+		 *
+		 * @return The reaction
+		 */
+		public Reaction reaction() {
+			return reaction;
+		}
+
+	}
+
 }
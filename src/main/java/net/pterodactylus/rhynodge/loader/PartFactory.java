@@ -0,0 +1,329 @@
+/*
+ * Rhynodge - PartFactory.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.loader;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Primitives;
+
+/**
+ * Creates the parts of a {@link Chain} from their class names and parameters.
+ * <p>
+ * Class names are resolved only once; the result, including the failure to
+ * find a class, is remembered. The same is true for the constructor that is
+ * used for a given number of parameters, which is kept as a
+ * {@link MethodHandle}.
+ * <p>
+ * A constructor is eligible if all its parameters are of one of the
+ * {@link #SUPPORTED_TYPES supported types} or an enum type; the parameter
+ * values given as strings are converted to these types. If a class has a
+ * constructor that only takes {@link String}s, it is always preferred.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+class PartFactory {
+
+	/** The supported types of constructor parameters, besides enums. */
+	private static final ImmutableSet<Class<?>> SUPPORTED_TYPES = ImmutableSet.<Class<?>> of(String.class, Integer.class, Long.class, Boolean.class, Double.class, URI.class);
+
+	/** The resolved classes, by fully-qualified or package-prefixed name. */
+	private final ConcurrentMap<String, Optional<Class<?>>> classes = new ConcurrentHashMap<String, Optional<Class<?>>>();
+
+	/** The constructors, by class name and number of parameters. */
+	private final ConcurrentMap<String, PartConstructor> constructors = new ConcurrentHashMap<String, PartConstructor>();
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Creates a new object.
+	 * <p>
+	 * First, {@code className} is used to try to load a {@link Class} with
+	 * that name. If that fails, {@code packageName} is prepended to the class
+	 * name. If no class can be found, a {@link LoaderException} will be
+	 * thrown.
+	 * <p>
+	 * If a class could be located using the described method, a constructor
+	 * will be searched that has the same number of parameters as the given
+	 * parameters. The parameters are then converted to the types of the
+	 * constructor’s parameters and used in a constructor call to create the
+	 * new object.
+	 *
+	 * @param className
+	 *            The name of the class
+	 * @param packageName
+	 *            The optional name of the package to prepend
+	 * @param parameters
+	 *            The parameters for the constructor call
+	 * @return The created object
+	 * @throws LoaderException
+	 *             if the object can not be created
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T createObject(String className, String packageName, List<String> parameters) throws LoaderException {
+		Class<?> objectClass = resolveClass(className, packageName);
+		PartConstructor partConstructor = findConstructor(objectClass, parameters.size());
+		return (T) partConstructor.newInstance(parameters);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Resolves the class with the given name.
+	 *
+	 * @param className
+	 *            The name of the class
+	 * @param packageName
+	 *            The name of the package to prepend if there is no class with
+	 *            the given name
+	 * @return The class
+	 * @throws LoaderException
+	 *             if neither class can be found
+	 */
+	private Class<?> resolveClass(String className, String packageName) throws LoaderException {
+		Optional<Class<?>> objectClass = loadClass(className);
+		if (!objectClass.isPresent()) {
+			objectClass = loadClass(packageName + "." + className);
+		}
+		if (!objectClass.isPresent()) {
+			throw new LoaderException(String.format("Could find neither class “%s” nor class “%s.”", className, packageName + "." + className));
+		}
+		return objectClass.get();
+	}
+
+	/**
+	 * Loads the class with the given name.
+	 *
+	 * @param className
+	 *            The name of the class
+	 * @return The class, or {@link Optional#absent()} if there is no class
+	 *         with the given name
+	 */
+	private Optional<Class<?>> loadClass(String className) {
+		Optional<Class<?>> objectClass = classes.get(className);
+		if (objectClass == null) {
+			try {
+				objectClass = Optional.<Class<?>> of(Class.forName(className));
+			} catch (ClassNotFoundException cnfe1) {
+				objectClass = Optional.absent();
+			}
+			classes.putIfAbsent(className, objectClass);
+		}
+		return objectClass;
+	}
+
+	/**
+	 * Finds the constructor of the given class that takes the given number of
+	 * parameters.
+	 *
+	 * @param objectClass
+	 *            The class to find a constructor of
+	 * @param parameterCount
+	 *            The number of parameters
+	 * @return The constructor
+	 * @throws LoaderException
+	 *             if there is no eligible constructor, or more than one
+	 */
+	private PartConstructor findConstructor(Class<?> objectClass, int parameterCount) throws LoaderException {
+		String constructorKey = objectClass.getName() + "/" + parameterCount;
+		PartConstructor partConstructor = constructors.get(constructorKey);
+		if (partConstructor != null) {
+			return partConstructor;
+		}
+		Constructor<?> stringConstructor = null;
+		Constructor<?> typedConstructor = null;
+		boolean ambiguous = false;
+		for (Constructor<?> constructor : objectClass.getConstructors()) {
+			Class<?>[] parameterTypes = constructor.getParameterTypes();
+			if (parameterTypes.length != parameterCount) {
+				continue;
+			}
+			boolean stringTypes = true;
+			boolean supportedTypes = true;
+			for (Class<?> parameterType : parameterTypes) {
+				stringTypes &= (parameterType == String.class);
+				supportedTypes &= isSupported(parameterType);
+			}
+			if (stringTypes) {
+				stringConstructor = constructor;
+			} else if (supportedTypes) {
+				ambiguous |= (typedConstructor != null);
+				typedConstructor = constructor;
+			}
+		}
+		Constructor<?> wantedConstructor = (stringConstructor != null) ? stringConstructor : typedConstructor;
+		if (wantedConstructor == null) {
+			throw new LoaderException(String.format("Could not find eligible constructor of %s with %d parameter(s).", objectClass.getName(), parameterCount));
+		}
+		if ((stringConstructor == null) && ambiguous) {
+			throw new LoaderException(String.format("Found more than one eligible constructor of %s with %d parameter(s).", objectClass.getName(), parameterCount));
+		}
+		try {
+			partConstructor = new PartConstructor(wantedConstructor);
+		} catch (IllegalAccessException iae1) {
+			throw new LoaderException("Could not access constructor.", iae1);
+		}
+		PartConstructor existingPartConstructor = constructors.putIfAbsent(constructorKey, partConstructor);
+		return (existingPartConstructor != null) ? existingPartConstructor : partConstructor;
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns whether parameter values can be converted to the given type.
+	 *
+	 * @param parameterType
+	 *            The type of a constructor parameter
+	 * @return {@code true} if parameter values can be converted to the type,
+	 *         {@code false} otherwise
+	 */
+	private static boolean isSupported(Class<?> parameterType) {
+		return SUPPORTED_TYPES.contains(Primitives.wrap(parameterType)) || parameterType.isEnum();
+	}
+
+	/**
+	 * Converts the given parameter value to the given type.
+	 *
+	 * @param value
+	 *            The value to convert
+	 * @param parameterType
+	 *            The type to convert the value to
+	 * @return The converted value
+	 * @throws IllegalArgumentException
+	 *             if the value can not be converted
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object convert(String value, Class<?> parameterType) throws IllegalArgumentException {
+		Class<?> wrappedType = Primitives.wrap(parameterType);
+		if (wrappedType == String.class) {
+			return value;
+		}
+		if (value == null) {
+			if (parameterType.isPrimitive()) {
+				throw new IllegalArgumentException("Value must not be null.");
+			}
+			return null;
+		}
+		if (wrappedType == Integer.class) {
+			return Integer.valueOf(value.trim());
+		}
+		if (wrappedType == Long.class) {
+			return Long.valueOf(value.trim());
+		}
+		if (wrappedType == Double.class) {
+			return Double.valueOf(value.trim());
+		}
+		if (wrappedType == Boolean.class) {
+			if (!"true".equalsIgnoreCase(value.trim()) && !"false".equalsIgnoreCase(value.trim())) {
+				throw new IllegalArgumentException(String.format("“%s” is neither “true” nor “false.”", value));
+			}
+			return Boolean.valueOf(value.trim());
+		}
+		if (wrappedType == URI.class) {
+			try {
+				return new URI(value.trim());
+			} catch (URISyntaxException use1) {
+				throw new IllegalArgumentException(use1.getMessage(), use1);
+			}
+		}
+		return Enum.valueOf((Class<? extends Enum>) parameterType, value.trim());
+	}
+
+	/**
+	 * A constructor with the types of its parameters.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class PartConstructor {
+
+		/** The class the constructor creates. */
+		private final Class<?> objectClass;
+
+		/** The types of the constructor’s parameters. */
+		private final Class<?>[] parameterTypes;
+
+		/**
+		 * The constructor, taking its parameters as an array and returning an
+		 * {@link Object}.
+		 */
+		private final MethodHandle constructorHandle;
+
+		/**
+		 * Creates a new part constructor.
+		 *
+		 * @param constructor
+		 *            The constructor
+		 * @throws IllegalAccessException
+		 *             if the constructor can not be accessed
+		 */
+		public PartConstructor(Constructor<?> constructor) throws IllegalAccessException {
+			this.objectClass = constructor.getDeclaringClass();
+			this.parameterTypes = constructor.getParameterTypes();
+			this.constructorHandle = MethodHandles.publicLookup().unreflectConstructor(constructor).asSpreader(Object[].class, parameterTypes.length).asType(MethodType.methodType(Object.class, Object[].class));
+		}
+
+		//
+		// ACTIONS
+		//
+
+		/**
+		 * Creates a new object from the given parameters.
+		 *
+		 * @param parameters
+		 *            The parameters for the constructor call
+		 * @return The created object
+		 * @throws LoaderException
+		 *             if a parameter can not be converted or the object can
+		 *             not be created
+		 */
+		public Object newInstance(List<String> parameters) throws LoaderException {
+			Object[] arguments = new Object[parameterTypes.length];
+			for (int parameterIndex = 0; parameterIndex < parameterTypes.length; ++parameterIndex) {
+				try {
+					arguments[parameterIndex] = convert(parameters.get(parameterIndex), parameterTypes[parameterIndex]);
+				} catch (IllegalArgumentException iae1) {
+					throw new LoaderException(String.format("Could not convert parameter %d of %s to %s.", parameterIndex + 1, objectClass.getName(), parameterTypes[parameterIndex].getSimpleName()), iae1);
+				}
+			}
+			try {
+				return constructorHandle.invokeExact(arguments);
+			} catch (Error e1) {
+				throw e1;
+			} catch (Throwable t1) {
+				throw new LoaderException("Could not invoke constructor.", t1);
+			}
+		}
+
+	}
+
+}
@@ -17,9 +17,8 @@
 
 package net.pterodactylus.rhynodge.loader;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -31,6 +30,11 @@ import net.pterodactylus.rhynodge.Trigger;
 import net.pterodactylus.rhynodge.Watcher;
 import net.pterodactylus.rhynodge.loader.Chain.Parameter;
 import net.pterodactylus.rhynodge.loader.Chain.Part;
+import net.pterodactylus.rhynodge.loader.Chain.Retention;
+import net.pterodactylus.rhynodge.triggers.RetainingTrigger;
+import net.pterodactylus.rhynodge.triggers.RetentionPolicy;
+
+import com.google.common.collect.Lists;
 
 /**
  * Creates {@link Reaction}s from {@link Chain}s.
@@ -39,6 +43,9 @@ import net.pterodactylus.rhynodge.loader.Chain.Part;
  */
 public class ReactionLoader {
 
+	/** The factory for the parts of all reactions. */
+	private static final PartFactory partFactory = new PartFactory();
+
 	/**
 	 * Creates a {@link Reaction} from the given {@link Chain}.
 	 *
@@ -48,47 +55,113 @@ public class ReactionLoader {
 	 * @throws LoaderException
 	 *             if a class can not be loaded
 	 */
-	@SuppressWarnings("static-method")
 	public Reaction loadReaction(Chain chain) throws LoaderException {
+		return reloadReaction(chain, null, null);
+	}
+
+	/**
+	 * Creates a {@link Reaction} from the given {@link Chain}, reusing all
+	 * parts of the given previous reaction whose definition has not changed.
+	 * Reused parts keep their state, e. g. the validators of an HTTP query.
+	 *
+	 * @param chain
+	 *            The chain to create a reaction from
+	 * @param previousChain
+	 *            The chain the previous reaction was created from (may be
+	 *            {@code null})
+	 * @param previousReaction
+	 *            The previous reaction (may be {@code null})
+	 * @return The created reaction
+	 * @throws LoaderException
+	 *             if a class can not be loaded
+	 */
+	@SuppressWarnings("static-method")
+	public Reaction reloadReaction(Chain chain, Chain previousChain, Reaction previousReaction) throws LoaderException {
 
 		/* check if chain is enabled. */
 		if (!chain.enabled()) {
 			throw new IllegalArgumentException("Chain is not enabled.");
 		}
 
+		boolean reuseParts = (previousChain != null) && (previousReaction != null);
+		boolean retentionUnchanged = reuseParts && ((chain.retention() != null) ? chain.retention().equals(previousChain.retention()) : (previousChain.retention() == null));
+		boolean triggerCreated;
+
 		Reaction reaction;
 
 		/* create action. */
-		Action action = createObject(chain.action().name(), "net.pterodactylus.rhynodge.actions", extractParameters(chain.action().parameters()));
+		Action action;
+		if (reuseParts && chain.action().equals(previousChain.action())) {
+			action = previousReaction.action();
+		} else {
+			action = createObject(chain.action().name(), "net.pterodactylus.rhynodge.actions", extractParameters(chain.action().parameters()));
+		}
 
 		/* do we have a reaction defined? */
 		if (chain.watcher() != null) {
 
-			/* create watcher. */
-			Watcher watcher = createObject(chain.watcher().name(), "net.pterodactylus.rhynodge.watchers", extractParameters(chain.watcher().parameters()));
+			if (retentionUnchanged && chain.watcher().equals(previousChain.watcher())) {
 
-			/* create reaction. */
-			reaction = new Reaction(chain.name(), watcher.query(), watcher.filters(), watcher.trigger(), action);
+				/* reuse the previous watcher’s parts. */
+				reaction = new Reaction(chain.name(), previousReaction.query(), Lists.newArrayList(previousReaction.filters()), previousReaction.trigger(), action);
+				triggerCreated = false;
+
+			} else {
+
+				/* create watcher. */
+				Watcher watcher = createObject(chain.watcher().name(), "net.pterodactylus.rhynodge.watchers", extractParameters(chain.watcher().parameters()));
+
+				/* create reaction. */
+				reaction = new Reaction(chain.name(), watcher.query(), watcher.filters(), watcher.trigger(), action);
+				triggerCreated = true;
+			}
 
 		} else {
 
 			/* create query. */
-			Query query = createObject(chain.query().name(), "net.pterodactylus.rhynodge.queries", extractParameters(chain.query().parameters()));
+			Query query;
+			if (reuseParts && chain.query().equals(previousChain.query())) {
+				query = previousReaction.query();
+			} else {
+				query = createObject(chain.query().name(), "net.pterodactylus.rhynodge.queries", extractParameters(chain.query().parameters()));
+			}
 
 			/* create filters. */
+			List<Filter> previousFilters = reuseParts ? Lists.newArrayList(previousReaction.filters()) : Collections.<Filter> emptyList();
 			List<Filter> filters = new ArrayList<Filter>();
-			for (Part filterPart : chain.filters()) {
-				filters.add(ReactionLoader.<Filter> createObject(filterPart.name(), "net.pterodactylus.rhynodge.filters", extractParameters(filterPart.parameters())));
+			for (int filterIndex = 0; filterIndex < chain.filters().size(); ++filterIndex) {
+				Part filterPart = chain.filters().get(filterIndex);
+				if (reuseParts && (previousChain.watcher() == null) && (filterIndex < previousChain.filters().size()) && filterPart.equals(previousChain.filters().get(filterIndex))) {
+					filters.add(previousFilters.get(filterIndex));
+				} else {
+					filters.add(ReactionLoader.<Filter> createObject(filterPart.name(), "net.pterodactylus.rhynodge.filters", extractParameters(filterPart.parameters())));
+				}
 			}
 
 			/* create trigger. */
-			Trigger trigger = createObject(chain.trigger().name(), "net.pterodactylus.rhynodge.triggers", extractParameters(chain.trigger().parameters()));
+			Trigger trigger;
+			if (retentionUnchanged && chain.trigger().equals(previousChain.trigger())) {
+				trigger = previousReaction.trigger();
+				triggerCreated = false;
+			} else {
+				trigger = createObject(chain.trigger().name(), "net.pterodactylus.rhynodge.triggers", extractParameters(chain.trigger().parameters()));
+				triggerCreated = true;
+			}
 
 			/* create reaction. */
 			reaction = new Reaction(chain.name(), query, filters, trigger, action);
 		}
 
 		reaction.setUpdateInterval(TimeUnit.SECONDS.toMillis(chain.updateInterval()));
+
+		/* limit the trigger’s history. */
+		if (triggerCreated && (chain.retention() != null)) {
+			if (!(reaction.trigger() instanceof RetainingTrigger)) {
+				throw new LoaderException(String.format("Trigger %s does not support a retention.", reaction.trigger().getClass().getName()));
+			}
+			Retention retention = chain.retention();
+			((RetainingTrigger) reaction.trigger()).setRetentionPolicy(new RetentionPolicy(retention.maxEntries(), TimeUnit.SECONDS.toMillis(retention.maxAge()), retention.maxSeasons(), retention.seenFilterSize(), retention.seenFilterFalsePositiveRate()));
+		}
 		return reaction;
 	}
 
@@ -114,16 +187,7 @@ public class ReactionLoader {
 	}
 
 	/**
-	 * Creates a new object.
-	 * <p>
-	 * First, {@code className} is used to try to load a {@link Class} with that
-	 * name. If that fails, {@code packageName} is prepended to the class name.
-	 * If no class can be found, a {@link LoaderException} will be thrown.
-	 * <p>
-	 * If a class could be located using the described method, a constructor
-	 * will be searched that has the same number of {@link String} parameters as
-	 * the given parameters. The parameters from the given parameters are then
-	 * used in a constructor call to create the new object.
+	 * Creates a new object using the shared {@link PartFactory}.
 	 *
 	 * @param className
 	 *            The name of the class
@@ -134,63 +198,10 @@ public class ReactionLoader {
 	 * @return The created object
 	 * @throws LoaderException
 	 *             if the object can not be created
+	 * @see PartFactory#createObject(String, String, List)
 	 */
-	@SuppressWarnings("unchecked")
 	private static <T> T createObject(String className, String packageName, List<String> parameters) throws LoaderException {
-
-		/* try to load class without package name. */
-		Class<?> objectClass = null;
-		try {
-			objectClass = Class.forName(className);
-		} catch (ClassNotFoundException cnfe1) {
-			/* ignore, we’ll try again. */
-		}
-
-		if (objectClass == null) {
-			try {
-				objectClass = Class.forName(packageName + "." + className);
-			} catch (ClassNotFoundException cnfe1) {
-				/* okay, now we need to throw. */
-				throw new LoaderException(String.format("Could find neither class “%s” nor class “%s.”", className, packageName + "." + className), cnfe1);
-			}
-		}
-
-		/* locate an eligible constructor. */
-		Constructor<?> wantedConstructor = null;
-		for (Constructor<?> constructor : objectClass.getConstructors()) {
-			Class<?>[] parameterTypes = constructor.getParameterTypes();
-			if (parameterTypes.length != parameters.size()) {
-				continue;
-			}
-			boolean compatibleTypes = true;
-			for (Class<?> parameterType : parameterTypes) {
-				if (parameterType != String.class) {
-					compatibleTypes = false;
-					break;
-				}
-			}
-			if (!compatibleTypes) {
-				continue;
-			}
-			wantedConstructor = constructor;
-		}
-
-		if (wantedConstructor == null) {
-			throw new LoaderException("Could not find eligible constructor.");
-		}
-
-		try {
-			return (T) wantedConstructor.newInstance(parameters.toArray());
-		} catch (IllegalArgumentException iae1) {
-			throw new LoaderException("Could not invoke constructor.", iae1);
-		} catch (InstantiationException ie1) {
-			throw new LoaderException("Could not invoke constructor.", ie1);
-		} catch (IllegalAccessException iae1) {
-			throw new LoaderException("Could not invoke constructor.", iae1);
-		} catch (InvocationTargetException ite1) {
-			throw new LoaderException("Could not invoke constructor.", ite1);
-		}
-
+		return partFactory.createObject(className, packageName, parameters);
 	}
 
 }
@@ -0,0 +1,132 @@
+/*
+ * Rhynodge - DigestOutput.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.output;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * {@link Output} implementation that combines several outputs into a single
+ * one. The summary lists the summaries of all outputs; the texts of the
+ * outputs are concatenated, each preceded by the summary of its output. HTML
+ * texts are combined into a single HTML document.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class DigestOutput implements Output {
+
+	/** The MIME type of HTML texts. */
+	private static final String HTML_MIME_TYPE = "text/html";
+
+	/** The outputs to combine. */
+	private final List<Output> outputs;
+
+	/**
+	 * Creates a new digest output.
+	 *
+	 * @param outputs
+	 *            The outputs to combine
+	 */
+	public DigestOutput(List<? extends Output> outputs) {
+		this.outputs = ImmutableList.copyOf(outputs);
+	}
+
+	//
+	// OUTPUT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String summary() {
+		StringBuilder summaryBuilder = new StringBuilder();
+		summaryBuilder.append(outputs.size()).append(" Updates: ");
+		for (int outputIndex = 0; outputIndex < outputs.size(); ++outputIndex) {
+			if (outputIndex > 0) {
+				summaryBuilder.append(", ");
+			}
+			summaryBuilder.append(outputs.get(outputIndex).summary());
+		}
+		return summaryBuilder.toString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String text(String mimeType, int maxLength) {
+		boolean html = HTML_MIME_TYPE.equals(mimeType);
+		StringBuilder textBuilder = new StringBuilder();
+		boolean textFound = false;
+		for (Output output : outputs) {
+			String text = output.text(mimeType, maxLength);
+			if (text == null) {
+				continue;
+			}
+			textFound = true;
+			if (html) {
+				textBuilder.append("<h1>").append(StringEscapeUtils.escapeHtml4(output.summary())).append("</h1>\n");
+				textBuilder.append(htmlBody(text)).append("\n");
+			} else {
+				textBuilder.append("== ").append(output.summary()).append(" ==\n\n");
+				textBuilder.append(text).append("\n");
+			}
+		}
+		if (!textFound) {
+			return null;
+		}
+		if (html) {
+			return "<html><body>\n" + textBuilder + "</body></html>\n";
+		}
+		return textBuilder.toString();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the content of the body of the given HTML text. If the text
+	 * does not contain a body element, it is returned unchanged.
+	 *
+	 * @param html
+	 *            The HTML text
+	 * @return The content of the body of the HTML text
+	 */
+	private static String htmlBody(String html) {
+		int bodyStart = StringUtils.indexOfIgnoreCase(html, "<body");
+		if (bodyStart == -1) {
+			return html;
+		}
+		int contentStart = html.indexOf('>', bodyStart);
+		if (contentStart == -1) {
+			return html;
+		}
+		int contentEnd = StringUtils.lastIndexOfIgnoreCase(html, "</body>");
+		if (contentEnd < contentStart) {
+			contentEnd = html.length();
+		}
+		return html.substring(contentStart + 1, contentEnd);
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Rhynodge - HttpClientFactory.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.queries;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Creates {@link HttpClient}s that keep connections to servers open and share
+ * them between all requests, so that {@link HttpQuery}s that request the same
+ * server do not need to establish a new connection for every request.
+ * Replies are requested compressed and decompressed transparently.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class HttpClientFactory {
+
+	/** The default maximum number of open connections. */
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	/** The default maximum number of open connections per host. */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+
+	/** The default connect timeout (in milliseconds). */
+	public static final int DEFAULT_CONNECT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(300);
+
+	/** The default socket timeout (in milliseconds). */
+	public static final int DEFAULT_SOCKET_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(300);
+
+	/**
+	 * The time an idle connection is kept open if the server does not say
+	 * otherwise (in milliseconds).
+	 */
+	private static final long DEFAULT_KEEP_ALIVE = TimeUnit.SECONDS.toMillis(30);
+
+	/**
+	 * Creates a new HTTP client using the default settings.
+	 *
+	 * @return A new HTTP client
+	 */
+	public static HttpClient createHttpClient() {
+		return createHttpClient(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_CONNECT_TIMEOUT, DEFAULT_SOCKET_TIMEOUT);
+	}
+
+	/**
+	 * Creates a new HTTP client. The client has to be shut down using its
+	 * {@link HttpClient#getConnectionManager() connection manager} when it is
+	 * no longer used.
+	 *
+	 * @param maxConnections
+	 *            The maximum number of open connections
+	 * @param maxConnectionsPerHost
+	 *            The maximum number of open connections per host
+	 * @param connectTimeout
+	 *            The connect timeout (in milliseconds)
+	 * @param socketTimeout
+	 *            The socket timeout (in milliseconds)
+	 * @return A new HTTP client
+	 */
+	public static HttpClient createHttpClient(int maxConnections, int maxConnectionsPerHost, int connectTimeout, int socketTimeout) {
+		PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+		DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager);
+		HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), connectTimeout);
+		HttpConnectionParams.setSoTimeout(httpClient.getParams(), socketTimeout);
+		httpClient.addRequestInterceptor(new RequestAcceptEncoding());
+		httpClient.addResponseInterceptor(new ResponseContentEncoding());
+		httpClient.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				long keepAliveDuration = super.getKeepAliveDuration(response, context);
+				return (keepAliveDuration > 0) ? keepAliveDuration : DEFAULT_KEEP_ALIVE;
+			}
+		});
+		return httpClient;
+	}
+
+}
@@ -18,35 +18,61 @@
 package net.pterodactylus.rhynodge.queries;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.concurrent.TimeUnit;
 
 import net.pterodactylus.rhynodge.Query;
 import net.pterodactylus.rhynodge.State;
 import net.pterodactylus.rhynodge.states.FailedState;
 import net.pterodactylus.rhynodge.states.HttpState;
+import net.pterodactylus.rhynodge.states.UnchangedState;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.protocol.ResponseContentEncoding;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.util.EntityUtils;
 
-import com.google.common.io.Closeables;
-
 /**
  * {@link Query} that performs an HTTP GET request to a fixed uri.
+ * <p>
+ * Requests are made using the {@link HttpClient} that has been set using
+ * {@link #setHttpClient(HttpClient)}; usually all queries share the same
+ * client so that connections to a server can be reused. If no client has been
+ * set, the query uses a default client that is shared by all such queries and
+ * is created when it is first needed; it is shut down by
+ * {@link #shutDownDefaultHttpClient()}.
+ * <p>
+ * The body of a reply is read completely into the returned {@link HttpState}
+ * so that its digest can be compared with the last content before the body is
+ * parsed; see {@link net.pterodactylus.rhynodge.engine.ReactionRunner}.
+ * <p>
+ * The “ETag” and “Last-Modified” headers of the last successful reply are
+ * sent with the next request; if the server replies that the page has not
+ * been modified, an {@link UnchangedState} is returned.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
 public class HttpQuery implements Query {
 
+	/** The default HTTP client, or {@code null} if it has not been created. */
+	/* synchronize on HttpQuery.class. */
+	private static HttpClient defaultHttpClient;
+
 	/** The uri to request. */
 	private final String uri;
 
+	/** The HTTP client to use. */
+	private volatile HttpClient httpClient;
+
+	/** The entity tag of the last reply. */
+	/* synchronize on this query. */
+	private String entityTag;
+
+	/** The last modification time of the last reply. */
+	/* synchronize on this query. */
+	private String lastModified;
+
 	/**
 	 * Creates a new HTTP query.
 	 *
@@ -57,6 +83,33 @@ public class HttpQuery implements Query {
 		this.uri = uri;
 	}
 
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Sets the HTTP client to use for requests.
+	 *
+	 * @param httpClient
+	 *            The HTTP client to use
+	 */
+	public void setHttpClient(HttpClient httpClient) {
+		this.httpClient = httpClient;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Forgets the entity tag and the last modification time of the last
+	 * reply, so that the next request is not a conditional request.
+	 */
+	public synchronized void clearValidators() {
+		entityTag = null;
+		lastModified = null;
+	}
+
 	//
 	// QUERY METHODS
 	//
@@ -65,32 +118,102 @@ public class HttpQuery implements Query {
 	 * {@inheritDoc}
 	 */
 	@Override
-	@SuppressWarnings("deprecation")
 	public State state() {
-		DefaultHttpClient httpClient = new DefaultHttpClient();
-		httpClient.addResponseInterceptor(new ResponseContentEncoding());
 		HttpGet get = new HttpGet(uri);
 
-		InputStreamReader inputStreamReader = null;
 		try {
 			/* make request. */
 			get.addHeader("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/536.11 (KHTML, like Gecko) Ubuntu/12.04 Chromium/20.0.1132.47 Chrome/20.0.1132.47 Safari/536.11");
-			HttpConnectionParams.setConnectionTimeout(get.getParams(), (int) TimeUnit.SECONDS.toMillis(300));
-			HttpConnectionParams.setSoTimeout(get.getParams(), (int) TimeUnit.SECONDS.toMillis(300));
-			HttpResponse response = httpClient.execute(get);
+			synchronized (this) {
+				if (entityTag != null) {
+					get.addHeader("If-None-Match", entityTag);
+				}
+				if (lastModified != null) {
+					get.addHeader("If-Modified-Since", lastModified);
+				}
+			}
+			HttpResponse response = getHttpClient().execute(get);
+			HttpEntity entity = response.getEntity();
+			if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+				EntityUtils.consume(entity);
+				return new UnchangedState();
+			}
 			if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+				/* consume the entity so that the connection can be reused. */
+				EntityUtils.consume(entity);
 				return new FailedState();
 			}
-			HttpEntity entity = response.getEntity();
 
 			/* yay, done! */
-			return new HttpState(uri, response.getStatusLine().getStatusCode(), entity.getContentType().getValue(), EntityUtils.toByteArray(entity));
+			HttpState httpState = new HttpState(uri, response.getStatusLine().getStatusCode(), entity.getContentType().getValue(), EntityUtils.toByteArray(entity), getHeaderValue(response, "ETag"), getHeaderValue(response, "Last-Modified"));
+			synchronized (this) {
+				entityTag = httpState.entityTag();
+				lastModified = httpState.lastModified();
+			}
+			return httpState;
 
 		} catch (IOException ioe1) {
 			return new FailedState(ioe1);
 		} finally {
-			Closeables.closeQuietly(inputStreamReader);
+			get.releaseConnection();
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the HTTP client to use, or the shared default client if no
+	 * client has been set.
+	 *
+	 * @return The HTTP client to use
+	 */
+	private HttpClient getHttpClient() {
+		HttpClient httpClient = this.httpClient;
+		return (httpClient != null) ? httpClient : getDefaultHttpClient();
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Shuts down the default HTTP client, if it has been created. A query that
+	 * needs the default client afterwards creates a new one.
+	 */
+	public static synchronized void shutDownDefaultHttpClient() {
+		if (defaultHttpClient != null) {
+			defaultHttpClient.getConnectionManager().shutdown();
+			defaultHttpClient = null;
 		}
 	}
 
+	/**
+	 * Returns the default HTTP client, creating it if necessary.
+	 *
+	 * @return The default HTTP client
+	 */
+	private static synchronized HttpClient getDefaultHttpClient() {
+		if (defaultHttpClient == null) {
+			defaultHttpClient = HttpClientFactory.createHttpClient();
+		}
+		return defaultHttpClient;
+	}
+
+	/**
+	 * Returns the value of the first header with the given name.
+	 *
+	 * @param response
+	 *            The response to get the header from
+	 * @param name
+	 *            The name of the header
+	 * @return The value of the header, or {@code null} if the response does
+	 *         not contain the header
+	 */
+	private static String getHeaderValue(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return (header != null) ? header.getValue() : null;
+	}
+
 }
@@ -21,7 +21,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import net.pterodactylus.rhynodge.State;
 import net.pterodactylus.rhynodge.filters.EpisodeFilter;
@@ -29,6 +31,7 @@ import net.pterodactylus.rhynodge.states.EpisodeState.Episode;
 import net.pterodactylus.rhynodge.states.TorrentState.TorrentFile;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.common.base.Function;
 
 /**
@@ -74,6 +77,21 @@ public class EpisodeState extends AbstractState implements Iterable<Episode> {
 		return Collections.unmodifiableCollection(episodes);
 	}
 
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Replaces all episodes of this state with the given episodes.
+	 *
+	 * @param episodes
+	 *            The new episodes of this state
+	 */
+	void setEpisodes(Collection<Episode> episodes) {
+		this.episodes.clear();
+		this.episodes.addAll(episodes);
+	}
+
 	//
 	// ITERABLE INTERFACE
 	//
@@ -118,9 +136,17 @@ public class EpisodeState extends AbstractState implements Iterable<Episode> {
 		@JsonProperty
 		private final int episode;
 
-		/** The torrent files for this episode. */
+		/** The torrent files for this episode, in the order they were added. */
+		@JsonProperty
+		@JsonDeserialize(as = LinkedHashSet.class)
+		private final Set<TorrentFile> torrentFiles = new LinkedHashSet<TorrentFile>();
+
+		/**
+		 * The time this episode was first seen (in milliseconds since the
+		 * epoch), or {@code 0} if it is not known yet.
+		 */
 		@JsonProperty
-		private final List<TorrentFile> torrentFiles = new ArrayList<TorrentFile>();
+		private long firstSeen;
 
 		/**
 		 * No-arg constructor for deserialization.
@@ -171,7 +197,7 @@ public class EpisodeState extends AbstractState implements Iterable<Episode> {
 		 * @return The torrent files of this episode
 		 */
 		public Collection<TorrentFile> torrentFiles() {
-			return torrentFiles;
+			return Collections.unmodifiableSet(torrentFiles);
 		}
 
 		/**
@@ -183,20 +209,47 @@ public class EpisodeState extends AbstractState implements Iterable<Episode> {
 			return String.format("S%02dE%02d", season, episode);
 		}
 
+		/**
+		 * Returns the time this episode was first seen.
+		 *
+		 * @return The time this episode was first seen (in milliseconds since
+		 *         the epoch), or {@code 0} if it is not known
+		 */
+		public long firstSeen() {
+			return firstSeen;
+		}
+
 		//
 		// ACTIONS
 		//
 
 		/**
-		 * Adds the given torrent file to this episode.
+		 * Adds the given torrent file to this episode, unless this episode
+		 * already contains it.
 		 *
 		 * @param torrentFile
 		 *            The torrent file to add
+		 * @return {@code true} if the torrent file was added, {@code false} if
+		 *         this episode already contained it
+		 */
+		public boolean addTorrentFile(TorrentFile torrentFile) {
+			return torrentFiles.add(torrentFile);
+		}
+
+		/**
+		 * Sets the time this episode was first seen, unless that time is
+		 * already known.
+		 *
+		 * @param time
+		 *            The time this episode was first seen (in milliseconds
+		 *            since the epoch)
+		 * @return This episode
 		 */
-		public void addTorrentFile(TorrentFile torrentFile) {
-			if (!torrentFiles.contains(torrentFile)) {
-				torrentFiles.add(torrentFile);
+		public Episode markFirstSeen(long time) {
+			if (firstSeen == 0) {
+				firstSeen = time;
 			}
+			return this;
 		}
 
 		//
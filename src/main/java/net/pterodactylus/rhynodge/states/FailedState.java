@@ -26,9 +26,6 @@ import net.pterodactylus.rhynodge.State;
  */
 public class FailedState extends AbstractState {
 
-	/** A failed state instance without an exception. */
-	public static final State INSTANCE = new FailedState();
-
 	/**
 	 * Creates a new failed state.
 	 */
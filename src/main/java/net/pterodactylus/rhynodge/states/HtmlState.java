@@ -78,7 +78,7 @@ public class HtmlState extends AbstractState {
 	 */
 	@Override
 	public String toString() {
-		return String.format("%s[document=(%s chars)]", getClass().getSimpleName(), document().toString().length());
+		return String.format("%s[uri=%s]", getClass().getSimpleName(), uri());
 	}
 
 }
@@ -45,6 +45,12 @@ public class HttpState extends AbstractState {
 	/** The result. */
 	private final byte[] rawResult;
 
+	/** The entity tag of the result. */
+	private final String entityTag;
+
+	/** The last modification time of the result. */
+	private final String lastModified;
+
 	/**
 	 * Creates a new HTTP state.
 	 *
@@ -58,10 +64,34 @@ public class HttpState extends AbstractState {
 	 *            The raw result
 	 */
 	public HttpState(String uri, int protocolCode, String contentType, byte[] rawResult) {
+		this(uri, protocolCode, contentType, rawResult, null, null);
+	}
+
+	/**
+	 * Creates a new HTTP state.
+	 *
+	 * @param uri
+	 *            The URI that was requested
+	 * @param protocolCode
+	 *            The code of the reply
+	 * @param contentType
+	 *            The content type of the reply
+	 * @param rawResult
+	 *            The raw result
+	 * @param entityTag
+	 *            The value of the “ETag” header of the reply (may be
+	 *            {@code null})
+	 * @param lastModified
+	 *            The value of the “Last-Modified” header of the reply (may be
+	 *            {@code null})
+	 */
+	public HttpState(String uri, int protocolCode, String contentType, byte[] rawResult, String entityTag, String lastModified) {
 		this.uri = uri;
 		this.protocolCode = protocolCode;
 		this.contentType = contentType;
 		this.rawResult = rawResult;
+		this.entityTag = entityTag;
+		this.lastModified = lastModified;
 	}
 
 	//
@@ -105,17 +135,47 @@ public class HttpState extends AbstractState {
 	}
 
 	/**
-	 * Returns the decoded content of the reply. This method uses the charset
-	 * information from the {@link #contentType()}, if present, or UTF-8 if no
-	 * content type is present.
+	 * Returns the entity tag of the reply.
+	 *
+	 * @return The value of the “ETag” header of the reply, or {@code null}
+	 *         if the reply did not contain one
+	 */
+	public String entityTag() {
+		return entityTag;
+	}
+
+	/**
+	 * Returns the last modification time of the reply.
+	 *
+	 * @return The value of the “Last-Modified” header of the reply, or
+	 *         {@code null} if the reply did not contain one
+	 */
+	public String lastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Returns the charset of the reply. This method uses the charset
+	 * information from the {@link #contentType()}, if present, or ISO-8859-1
+	 * if no charset is given.
+	 *
+	 * @return The charset of the reply
+	 */
+	public String charset() {
+		return extractCharset(contentType());
+	}
+
+	/**
+	 * Returns the decoded content of the reply, using the {@link #charset()}
+	 * of the reply.
 	 *
 	 * @return The decoded content
 	 */
 	public String content() {
 		try {
-			return new String(rawResult(), extractCharset(contentType()));
+			return new String(rawResult(), charset());
 		} catch (UnsupportedEncodingException uee1) {
-			throw new RuntimeException(String.format("Could not decode content as %s.", extractCharset(contentType())), uee1);
+			throw new RuntimeException(String.format("Could not decode content as %s.", charset()), uee1);
 		}
 	}
 
@@ -0,0 +1,554 @@
+/*
+ * Rhynodge - JournalStateStore.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.states;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.pterodactylus.rhynodge.State;
+import net.pterodactylus.rhynodge.states.EpisodeState.Episode;
+import net.pterodactylus.rhynodge.states.StateCodec.Format;
+import net.pterodactylus.rhynodge.states.StateFileWriter.Durability;
+import net.pterodactylus.rhynodge.states.TorrentState.TorrentFile;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link StateStore} that appends every saved state to a per-reaction journal
+ * instead of rewriting the complete state.
+ * <p>
+ * If a saved {@link TorrentState} or {@link EpisodeState} contains everything
+ * the previous successful state contained, only the added torrent files are
+ * written to the journal; all other states are written in full. Once a
+ * journal grows larger than the compaction threshold it is compacted in the
+ * background: the current states are written as snapshot and the journal is
+ * removed.
+ * <p>
+ * The snapshot uses the same files as the {@link JsonStateStore}, so existing
+ * state directories can be used with this store, and vice versa after a
+ * compaction.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class JournalStateStore implements StateStore {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(JournalStateStore.class);
+
+	/** The default size of a journal that triggers a compaction (in bytes). */
+	public static final long DEFAULT_COMPACTION_THRESHOLD = 1024 * 1024;
+
+	/** The charset of the journal files. */
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	/** Jackson object mapper. */
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	/** The directory in which to store states. */
+	private final String directory;
+
+	/** The durability of the journal writes. */
+	private final Durability durability;
+
+	/** The size of a journal that triggers a compaction (in bytes). */
+	private final long compactionThreshold;
+
+	/** The store for the snapshots. */
+	private final JsonStateStore snapshotStore;
+
+	/** Locks for every reaction. */
+	private final ConcurrentMap<String, Object> reactionLocks = Maps.newConcurrentMap();
+
+	/** The names of reactions whose journal is about to be compacted. */
+	private final Set<String> pendingCompactions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/** The executor for the compactions. */
+	private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("Rhynodge Journal Compactor").setDaemon(true).build());
+
+	/**
+	 * Creates a new journal state store that compacts journals larger than
+	 * {@link #DEFAULT_COMPACTION_THRESHOLD}. The given directory is assumed to
+	 * exist.
+	 *
+	 * @param directory
+	 *            The directory to store states in
+	 * @param durability
+	 *            The durability of written states
+	 */
+	public JournalStateStore(String directory, Durability durability) {
+		this(directory, durability, DEFAULT_COMPACTION_THRESHOLD);
+	}
+
+	/**
+	 * Creates a new journal state store. The given directory is assumed to
+	 * exist.
+	 *
+	 * @param directory
+	 *            The directory to store states in
+	 * @param durability
+	 *            The durability of written states
+	 * @param compactionThreshold
+	 *            The size of a journal that triggers a compaction (in bytes)
+	 */
+	public JournalStateStore(String directory, Durability durability, long compactionThreshold) {
+		this(directory, durability, compactionThreshold, new StateCodec(Format.JSON));
+	}
+
+	/**
+	 * Creates a new journal state store. The given directory is assumed to
+	 * exist. Journal entries are always written as JSON; the given codec is
+	 * used for the compacted state files.
+	 *
+	 * @param directory
+	 *            The directory to store states in
+	 * @param durability
+	 *            The durability of written states
+	 * @param compactionThreshold
+	 *            The size of a journal that triggers a compaction (in bytes)
+	 * @param stateCodec
+	 *            The codec for the compacted state files
+	 */
+	public JournalStateStore(String directory, Durability durability, long compactionThreshold, StateCodec stateCodec) {
+		this.directory = directory;
+		this.durability = durability;
+		this.compactionThreshold = compactionThreshold;
+		this.snapshotStore = new JsonStateStore(directory, durability, stateCodec);
+	}
+
+	//
+	// STATESTORE METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public State loadLastState(String reactionName) {
+		synchronized (reactionLock(reactionName)) {
+			return replayJournal(reactionName).getLeft();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public State loadLastSuccessfulState(String reactionName) {
+		synchronized (reactionLock(reactionName)) {
+			return replayJournal(reactionName).getRight();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean saveState(String reactionName, State state, State previousSuccessfulState) {
+		long journalSize;
+		synchronized (reactionLock(reactionName)) {
+			try {
+				journalSize = appendToJournal(reactionName, createJournalEntry(state, previousSuccessfulState));
+			} catch (IOException ioe1) {
+				logger.warn(String.format("State for Reaction “%s” could not be written.", reactionName), ioe1);
+				return false;
+			}
+		}
+		if (journalSize > compactionThreshold) {
+			scheduleCompaction(reactionName);
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		compactionExecutor.shutdown();
+		try {
+			compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException ie1) {
+			logger.warn("Interrupted while waiting for compactions.", ie1);
+		}
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Compacts the journal of the reaction with the given name: the current
+	 * states are written as snapshot and the journal is removed.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void compact(String reactionName) throws IOException {
+		synchronized (reactionLock(reactionName)) {
+			Path journalFile = journalFile(reactionName);
+			if (!Files.exists(journalFile)) {
+				return;
+			}
+			logger.debug(String.format("Compacting Journal of “%s”...", reactionName));
+			Pair<State, State> states = replayJournal(reactionName);
+			if (states.getRight() != null) {
+				snapshotStore.writeState(reactionName, states.getRight());
+			}
+			if ((states.getLeft() != null) && (states.getLeft() != states.getRight())) {
+				snapshotStore.writeState(reactionName, states.getLeft());
+			}
+			Files.delete(journalFile);
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the lock object for the reaction with the given name.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @return The lock for the reaction
+	 */
+	private Object reactionLock(String reactionName) {
+		Object newLock = new Object();
+		Object existingLock = reactionLocks.putIfAbsent(reactionName, newLock);
+		return (existingLock != null) ? existingLock : newLock;
+	}
+
+	/**
+	 * Returns the journal file of the reaction with the given name.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @return The journal file of the reaction
+	 */
+	private Path journalFile(String reactionName) {
+		return new File(directory, reactionName + ".journal").toPath();
+	}
+
+	/**
+	 * Schedules a compaction of the journal of the reaction with the given
+	 * name, unless one is already scheduled.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 */
+	private void scheduleCompaction(final String reactionName) {
+		if (!pendingCompactions.add(reactionName)) {
+			return;
+		}
+		compactionExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				pendingCompactions.remove(reactionName);
+				try {
+					compact(reactionName);
+				} catch (IOException ioe1) {
+					logger.warn(String.format("Could not compact Journal of “%s”.", reactionName), ioe1);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates a journal entry for the given state. If the state is a superset
+	 * of the previous successful state, the entry only contains the
+	 * difference between the two states.
+	 *
+	 * @param state
+	 *            The state to create a journal entry for
+	 * @param previousSuccessfulState
+	 *            The previous successful state (may be {@code null})
+	 * @return The journal entry
+	 */
+	private JsonNode createJournalEntry(State state, State previousSuccessfulState) {
+		State deltaState = null;
+		if (state.success() && (previousSuccessfulState != null) && previousSuccessfulState.success()) {
+			deltaState = createDeltaState(previousSuccessfulState, state);
+		}
+		ObjectNode stateNode = objectMapper.valueToTree((deltaState != null) ? deltaState : state);
+		if (deltaState != null) {
+			stateNode.put("time", state.time());
+			stateNode.put("failCount", state.failCount());
+		}
+		ObjectNode journalEntry = objectMapper.createObjectNode();
+		journalEntry.put("delta", deltaState != null);
+		journalEntry.put("state", stateNode);
+		return journalEntry;
+	}
+
+	/**
+	 * Appends the given journal entry to the journal of the reaction with the
+	 * given name. If the entry can not be written completely, the journal is
+	 * truncated to its previous size so that the next entry does not start in
+	 * the middle of a line.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param journalEntry
+	 *            The journal entry to append
+	 * @return The size of the journal after appending the entry (in bytes)
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private long appendToJournal(String reactionName, JsonNode journalEntry) throws IOException {
+		byte[] line = (objectMapper.writeValueAsString(journalEntry) + "\n").getBytes(utf8);
+		FileChannel journalChannel = FileChannel.open(journalFile(reactionName), StandardOpenOption.WRITE, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+		try {
+			long previousSize = journalChannel.size();
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(line);
+				while (buffer.hasRemaining()) {
+					journalChannel.write(buffer);
+				}
+				if (durability != Durability.NONE) {
+					journalChannel.force(false);
+				}
+			} catch (IOException ioe1) {
+				try {
+					journalChannel.truncate(previousSize);
+				} catch (IOException ioe2) {
+					logger.warn(String.format("Could not truncate Journal of “%s”.", reactionName), ioe2);
+				}
+				throw ioe1;
+			}
+			return journalChannel.size();
+		} finally {
+			journalChannel.close();
+		}
+	}
+
+	/**
+	 * Loads the snapshot of the reaction with the given name and replays its
+	 * journal on top of it. Journal entries that can not be parsed, such as a
+	 * partially written last entry, are skipped.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @return The last state (left) and the last successful state (right) of
+	 *         the reaction, either of which may be {@code null}
+	 */
+	private Pair<State, State> replayJournal(String reactionName) {
+		State lastState = snapshotStore.loadLastState(reactionName);
+		State lastSuccessfulState = snapshotStore.loadLastSuccessfulState(reactionName);
+		List<String> journalLines;
+		try {
+			journalLines = Files.readAllLines(journalFile(reactionName), utf8);
+		} catch (NoSuchFileException nsfe1) {
+			return Pair.of(lastState, lastSuccessfulState);
+		} catch (IOException ioe1) {
+			logger.warn(String.format("Journal for Reaction “%s” could not be read.", reactionName), ioe1);
+			return Pair.of(lastState, lastSuccessfulState);
+		}
+		for (String journalLine : journalLines) {
+			State state;
+			try {
+				JsonNode journalEntry = objectMapper.readTree(journalLine);
+				state = objectMapper.treeToValue(journalEntry.get("state"), AbstractState.class);
+				if (journalEntry.get("delta").asBoolean()) {
+					if (lastSuccessfulState == null) {
+						logger.warn(String.format("Journal for Reaction “%s” contains a delta without a base state.", reactionName));
+						continue;
+					}
+					state = applyDeltaState(lastSuccessfulState, state);
+				}
+			} catch (IOException ioe1) {
+				logger.warn(String.format("Journal entry for Reaction “%s” could not be parsed.", reactionName), ioe1);
+				continue;
+			} catch (RuntimeException re1) {
+				logger.warn(String.format("Journal entry for Reaction “%s” could not be parsed.", reactionName), re1);
+				continue;
+			}
+			lastState = state;
+			if (state.success()) {
+				lastSuccessfulState = state;
+			}
+		}
+		return Pair.of(lastState, lastSuccessfulState);
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Creates a state that only contains what the given state adds to the
+	 * given previous state. This is only possible for {@link TorrentState}s and
+	 * {@link EpisodeState}s, and only if the state contains everything the
+	 * previous state contains.
+	 *
+	 * @param previousState
+	 *            The previous state
+	 * @param state
+	 *            The current state
+	 * @return The delta state, or {@code null} if no delta state can be
+	 *         created
+	 */
+	private static State createDeltaState(State previousState, State state) {
+		if ((previousState instanceof TorrentState) && (state instanceof TorrentState)) {
+			Set<TorrentFile> previousTorrentFiles = Sets.newHashSet(((TorrentState) previousState).torrentFiles());
+			if (!Sets.newHashSet(((TorrentState) state).torrentFiles()).containsAll(previousTorrentFiles)) {
+				return null;
+			}
+			TorrentState deltaState = new TorrentState();
+			for (TorrentFile torrentFile : (TorrentState) state) {
+				if (!previousTorrentFiles.contains(torrentFile)) {
+					deltaState.addTorrentFile(torrentFile);
+				}
+			}
+			/* only store the seen filter if it has changed. */
+			SeenFilter seenFilter = ((TorrentState) state).seenFilter();
+			SeenFilter previousSeenFilter = ((TorrentState) previousState).seenFilter();
+			if ((seenFilter == null) && (previousSeenFilter != null)) {
+				return null;
+			}
+			if ((seenFilter != null) && !seenFilter.equals(previousSeenFilter)) {
+				deltaState.setSeenFilter(seenFilter);
+			}
+			return deltaState;
+		}
+		if ((previousState instanceof EpisodeState) && (state instanceof EpisodeState)) {
+			Map<Episode, Episode> episodes = indexEpisodes((EpisodeState) state);
+			for (Episode previousEpisode : (EpisodeState) previousState) {
+				Episode episode = episodes.get(previousEpisode);
+				if ((episode == null) || !Sets.newHashSet(episode.torrentFiles()).containsAll(previousEpisode.torrentFiles())) {
+					return null;
+				}
+			}
+			Map<Episode, Episode> previousEpisodes = indexEpisodes((EpisodeState) previousState);
+			List<Episode> deltaEpisodes = Lists.newArrayList();
+			for (Episode episode : (EpisodeState) state) {
+				Episode previousEpisode = previousEpisodes.get(episode);
+				Set<TorrentFile> previousTorrentFiles = (previousEpisode != null) ? Sets.newHashSet(previousEpisode.torrentFiles()) : Collections.<TorrentFile> emptySet();
+				Episode deltaEpisode = new Episode(episode.season(), episode.episode()).markFirstSeen(episode.firstSeen());
+				for (TorrentFile torrentFile : episode) {
+					if (!previousTorrentFiles.contains(torrentFile)) {
+						deltaEpisode.addTorrentFile(torrentFile);
+					}
+				}
+				if ((previousEpisode == null) || !deltaEpisode.torrentFiles().isEmpty()) {
+					deltaEpisodes.add(deltaEpisode);
+				}
+			}
+			return new EpisodeState(deltaEpisodes);
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the content of the given previous state to the given delta state.
+	 * The content of the previous state comes first, followed by the content
+	 * of the delta state, so that the order in which torrent files and
+	 * episodes have been found is kept. A delta state without a seen filter
+	 * takes over the seen filter of the previous state. The previous state is
+	 * not changed.
+	 *
+	 * @param previousState
+	 *            The previous state
+	 * @param deltaState
+	 *            The delta state
+	 * @return The delta state, now containing the content of the previous
+	 *         state
+	 */
+	private static State applyDeltaState(State previousState, State deltaState) {
+		if ((previousState instanceof TorrentState) && (deltaState instanceof TorrentState)) {
+			List<TorrentFile> torrentFiles = Lists.newArrayList(((TorrentState) previousState).torrentFiles());
+			torrentFiles.addAll(((TorrentState) deltaState).torrentFiles());
+			((TorrentState) deltaState).setTorrentFiles(torrentFiles);
+			if (((TorrentState) deltaState).seenFilter() == null) {
+				((TorrentState) deltaState).setSeenFilter(((TorrentState) previousState).seenFilter());
+			}
+			return deltaState;
+		}
+		if ((previousState instanceof EpisodeState) && (deltaState instanceof EpisodeState)) {
+			Map<Episode, Episode> deltaEpisodes = indexEpisodes((EpisodeState) deltaState);
+			Map<Episode, Episode> previousEpisodes = indexEpisodes((EpisodeState) previousState);
+			List<Episode> episodes = Lists.newArrayList();
+			for (Episode previousEpisode : (EpisodeState) previousState) {
+				Episode episode = new Episode(previousEpisode.season(), previousEpisode.episode()).markFirstSeen(previousEpisode.firstSeen());
+				for (TorrentFile torrentFile : previousEpisode) {
+					episode.addTorrentFile(torrentFile);
+				}
+				Episode deltaEpisode = deltaEpisodes.get(previousEpisode);
+				if (deltaEpisode != null) {
+					/* only used if the previous episode has not been stamped. */
+					episode.markFirstSeen(deltaEpisode.firstSeen());
+					for (TorrentFile torrentFile : deltaEpisode) {
+						episode.addTorrentFile(torrentFile);
+					}
+				}
+				episodes.add(episode);
+			}
+			for (Episode deltaEpisode : (EpisodeState) deltaState) {
+				if (!previousEpisodes.containsKey(deltaEpisode)) {
+					episodes.add(deltaEpisode);
+				}
+			}
+			((EpisodeState) deltaState).setEpisodes(episodes);
+			return deltaState;
+		}
+		throw new IllegalStateException(String.format("Can not apply %s to %s.", deltaState.getClass().getName(), previousState.getClass().getName()));
+	}
+
+	/**
+	 * Indexes the episodes of the given episode state.
+	 *
+	 * @param episodeState
+	 *            The episode state
+	 * @return The episodes of the state, mapped to themselves
+	 */
+	private static Map<Episode, Episode> indexEpisodes(EpisodeState episodeState) {
+		Map<Episode, Episode> episodes = Maps.newHashMap();
+		for (Episode episode : episodeState) {
+			episodes.put(episode, episode);
+		}
+		return episodes;
+	}
+
+}
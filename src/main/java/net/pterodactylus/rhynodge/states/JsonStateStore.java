@@ -0,0 +1,228 @@
+/*
+ * Rhynodge - JsonStateStore.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.states;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import net.pterodactylus.rhynodge.State;
+import net.pterodactylus.rhynodge.states.StateCodec.Format;
+import net.pterodactylus.rhynodge.states.StateFileWriter.Durability;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+/**
+ * {@link StateStore} that stores the states of every reaction in two files in
+ * a directory, {@code <name>.last.json} and {@code <name>.success.json}. The
+ * states are encoded by a {@link StateCodec}; unless configured otherwise
+ * they are written as JSON. States written as Smile are stored in
+ * {@code <name>.last.smile} and {@code <name>.success.smile} instead. If there
+ * is no file in the current format, the file in the other format is read, and
+ * it is removed once the state has been written in the current format.
+ * <p>
+ * States are written using a {@link StateFileWriter} so that a crash during
+ * a write can not leave a corrupted state file behind.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class JsonStateStore implements StateStore {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(JsonStateStore.class);
+
+	/** The codec for the states. */
+	private final StateCodec stateCodec;
+
+	/** The directory in which to store states. */
+	private final String directory;
+
+	/** The writer for the state files. */
+	private final StateFileWriter stateFileWriter;
+
+	/**
+	 * Creates a new JSON state store. The given directory is assumed to exist.
+	 *
+	 * @param directory
+	 *            The directory to store states in
+	 * @param durability
+	 *            The durability of written states
+	 */
+	public JsonStateStore(String directory, Durability durability) {
+		this(directory, durability, new StateCodec(Format.JSON));
+	}
+
+	/**
+	 * Creates a new state store. The given directory is assumed to exist.
+	 *
+	 * @param directory
+	 *            The directory to store states in
+	 * @param durability
+	 *            The durability of written states
+	 * @param stateCodec
+	 *            The codec for the states
+	 */
+	public JsonStateStore(String directory, Durability durability, StateCodec stateCodec) {
+		this.directory = directory;
+		this.stateFileWriter = new StateFileWriter(durability);
+		this.stateCodec = stateCodec;
+	}
+
+	//
+	// STATESTORE METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public State loadLastState(String reactionName) {
+		return loadStateFile(reactionName, "last");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public State loadLastSuccessfulState(String reactionName) {
+		return loadStateFile(reactionName, "success");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean saveState(String reactionName, State state, State previousSuccessfulState) {
+		try {
+			writeState(reactionName, state);
+			return true;
+		} catch (JsonGenerationException jge1) {
+			logger.warn(String.format("State for Reaction “%s” could not be generated.", reactionName), jge1);
+		} catch (JsonMappingException jme1) {
+			logger.warn(String.format("State for Reaction “%s” could not be generated.", reactionName), jme1);
+		} catch (IOException ioe1) {
+			logger.warn(String.format("State for Reaction “%s” could not be written.", reactionName), ioe1);
+		}
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		/* nothing to close. */
+	}
+
+	//
+	// PACKAGE-PRIVATE METHODS
+	//
+
+	/**
+	 * Writes the given state as last state of the reaction with the given
+	 * name. If the state is successful it is also written as the last
+	 * successful state.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param state
+	 *            The state to write
+	 * @throws IOException
+	 *             if the state can not be written
+	 */
+	void writeState(String reactionName, State state) throws IOException {
+		byte[] stateContent = stateCodec.encode(state);
+		Path lastStateFile = stateFile(reactionName, "last", stateCodec.format()).toPath();
+		if (state.success()) {
+			stateFileWriter.write(stateContent, lastStateFile, stateFile(reactionName, "success", stateCodec.format()).toPath());
+		} else {
+			stateFileWriter.write(stateContent, lastStateFile);
+		}
+
+		/* remove files of other formats, they are outdated now. */
+		for (Format format : Format.values()) {
+			if (format == stateCodec.format()) {
+				continue;
+			}
+			try {
+				Files.deleteIfExists(stateFile(reactionName, "last", format).toPath());
+				if (state.success()) {
+					Files.deleteIfExists(stateFile(reactionName, "success", format).toPath());
+				}
+			} catch (IOException ioe1) {
+				logger.warn(String.format("Outdated state files for Reaction “%s” could not be removed.", reactionName), ioe1);
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the file for the state with the given name in the given format.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param suffix
+	 *            An additional suffix (may be {@code null}
+	 * @param format
+	 *            The format of the file
+	 * @return The file for the state
+	 */
+	private File stateFile(String reactionName, String suffix, Format format) {
+		return new File(directory, reactionName + ((suffix != null) ? "." + suffix : "") + "." + format.extension());
+	}
+
+	/**
+	 * Load the given state for the reaction with the given name.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param suffix
+	 *            The suffix of the state file
+	 * @return The loaded state, or {@code null} if the state could not be
+	 *         loaded
+	 */
+	private State loadStateFile(String reactionName, String suffix) {
+		File stateFile = stateFile(reactionName, suffix, stateCodec.format());
+		for (Format format : Format.values()) {
+			if (stateFile.exists()) {
+				break;
+			}
+			stateFile = stateFile(reactionName, suffix, format);
+		}
+		try {
+			State state = stateCodec.decode(stateFile);
+			return state;
+		} catch (JsonParseException jpe1) {
+			logger.warn(String.format("State for Reaction “%s” could not be parsed.", reactionName), jpe1);
+		} catch (JsonMappingException jme1) {
+			logger.warn(String.format("State for Reaction “%s” could not be parsed.", reactionName), jme1);
+		} catch (IOException ioe1) {
+			logger.info(String.format("State for Reaction “%s” could not be found.", reactionName));
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,287 @@
+/*
+ * Rhynodge - SeenFilter.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.states;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import net.pterodactylus.rhynodge.states.TorrentState.TorrentFile;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Compact, probabilistic set of the {@link TorrentFile#id() IDs} of torrent
+ * files that have been seen before. A file that has been added is always
+ * recognized; a file that has never been added is wrongly recognized with a
+ * probability of about the configured false positive rate, as long as not
+ * more than the expected number of files have been added.
+ * <p>
+ * The filter is a bloom filter: every ID sets a number of bits in a bit
+ * array, derived from the 128-bit Murmur3 hash of the ID. The bit array is
+ * stored base64-encoded, along with the number of hash functions.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SeenFilter {
+
+	/** The hash function for the IDs. */
+	private static final HashFunction hashFunction = Hashing.murmur3_128();
+
+	/** The number of files this filter is sized for. */
+	@JsonProperty
+	private final int expectedEntries;
+
+	/** The false positive rate this filter is sized for. */
+	@JsonProperty
+	private final double falsePositiveRate;
+
+	/** The number of files that have been added to this filter. */
+	@JsonProperty
+	private int entries;
+
+	/** The number of bits that are set for every ID. */
+	@JsonProperty
+	private int hashFunctions;
+
+	/** The bits of the filter. */
+	private long[] bits;
+
+	/**
+	 * No-arg constructor for deserialization.
+	 */
+	@SuppressWarnings("unused")
+	private SeenFilter() {
+		this(1, 0.5);
+	}
+
+	/**
+	 * Creates a new, empty seen filter.
+	 *
+	 * @param expectedEntries
+	 *            The number of files the filter is sized for
+	 * @param falsePositiveRate
+	 *            The false positive rate the filter is sized for
+	 */
+	public SeenFilter(int expectedEntries, double falsePositiveRate) {
+		this.expectedEntries = expectedEntries;
+		this.falsePositiveRate = falsePositiveRate;
+		long bitCount = Math.max(64, (long) (-expectedEntries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+		this.bits = new long[(int) ((bitCount + 63) / 64)];
+		this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expectedEntries * Math.log(2)));
+	}
+
+	/**
+	 * Creates a copy of the given seen filter.
+	 *
+	 * @param seenFilter
+	 *            The seen filter to copy
+	 */
+	private SeenFilter(SeenFilter seenFilter) {
+		this.expectedEntries = seenFilter.expectedEntries;
+		this.falsePositiveRate = seenFilter.falsePositiveRate;
+		this.entries = seenFilter.entries;
+		this.hashFunctions = seenFilter.hashFunctions;
+		this.bits = seenFilter.bits.clone();
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of files this filter is sized for.
+	 *
+	 * @return The number of files this filter is sized for
+	 */
+	public int expectedEntries() {
+		return expectedEntries;
+	}
+
+	/**
+	 * Returns the false positive rate this filter is sized for.
+	 *
+	 * @return The false positive rate this filter is sized for
+	 */
+	public double falsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+	/**
+	 * Returns the number of files that have been added to this filter.
+	 *
+	 * @return The number of files added to this filter
+	 */
+	public int entries() {
+		return entries;
+	}
+
+	/**
+	 * Returns whether the given torrent file has probably been added to this
+	 * filter.
+	 *
+	 * @param torrentFile
+	 *            The torrent file to check
+	 * @return {@code true} if the torrent file has probably been added to
+	 *         this filter, {@code false} if it definitely has not been added
+	 */
+	public boolean mightContain(TorrentFile torrentFile) {
+		for (long bitIndex : bitIndices(torrentFile)) {
+			if ((bits[(int) (bitIndex >>> 6)] & (1L << bitIndex)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds the given torrent file to this filter.
+	 *
+	 * @param torrentFile
+	 *            The torrent file to add
+	 * @return {@code true} if this filter has been changed, {@code false} if
+	 *         all bits of the torrent file were already set
+	 */
+	public boolean add(TorrentFile torrentFile) {
+		boolean changed = false;
+		for (long bitIndex : bitIndices(torrentFile)) {
+			long bit = 1L << bitIndex;
+			if ((bits[(int) (bitIndex >>> 6)] & bit) == 0) {
+				bits[(int) (bitIndex >>> 6)] |= bit;
+				changed = true;
+			}
+		}
+		if (changed) {
+			++entries;
+		}
+		return changed;
+	}
+
+	/**
+	 * Returns a copy of this filter that can be changed without changing this
+	 * filter.
+	 *
+	 * @return A copy of this filter
+	 */
+	public SeenFilter copy() {
+		return new SeenFilter(this);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the indices of the bits of the given torrent file. The indices
+	 * are derived from the two halves of the hash of its ID by double hashing.
+	 *
+	 * @param torrentFile
+	 *            The torrent file
+	 * @return The indices of the bits of the torrent file
+	 */
+	private long[] bitIndices(TorrentFile torrentFile) {
+		ByteBuffer hash = ByteBuffer.wrap(hashFunction.hashString(torrentFile.id(), Charsets.UTF_8).asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+		long hash1 = hash.getLong(0);
+		long hash2 = hash.getLong(8);
+		long bitCount = bits.length * 64L;
+		long[] bitIndices = new long[hashFunctions];
+		for (int hashFunction = 0; hashFunction < hashFunctions; ++hashFunction) {
+			long combinedHash = hash1 + (hashFunction + 1) * hash2;
+			bitIndices[hashFunction] = (combinedHash & Long.MAX_VALUE) % bitCount;
+		}
+		return bitIndices;
+	}
+
+	/**
+	 * Returns the encoded bits, for serialization.
+	 *
+	 * @return The encoded bits
+	 */
+	@JsonProperty("bits")
+	private String encodeBits() {
+		ByteBuffer encodedBits = ByteBuffer.allocate(bits.length * 8);
+		encodedBits.asLongBuffer().put(bits);
+		return BaseEncoding.base64().encode(encodedBits.array());
+	}
+
+	/**
+	 * Sets the bits from their encoded form, for deserialization.
+	 *
+	 * @param encodedBits
+	 *            The encoded bits
+	 * @throws IOException
+	 *             if the bits can not be decoded
+	 */
+	@JsonProperty("bits")
+	@SuppressWarnings("unused")
+	private void decodeBits(String encodedBits) throws IOException {
+		byte[] decodedBits;
+		try {
+			decodedBits = BaseEncoding.base64().decode(encodedBits);
+		} catch (IllegalArgumentException iae1) {
+			throw new IOException("Could not decode seen filter.", iae1);
+		}
+		if ((decodedBits.length == 0) || ((decodedBits.length % 8) != 0)) {
+			throw new IOException(String.format("Invalid seen filter length: %d", decodedBits.length));
+		}
+		bits = new long[decodedBits.length / 8];
+		ByteBuffer.wrap(decodedBits).asLongBuffer().get(bits);
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(bits) ^ hashFunctions;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof SeenFilter)) {
+			return false;
+		}
+		SeenFilter seenFilter = (SeenFilter) object;
+		return (expectedEntries == seenFilter.expectedEntries) && (Double.compare(falsePositiveRate, seenFilter.falsePositiveRate) == 0) && (entries == seenFilter.entries) && (hashFunctions == seenFilter.hashFunctions) && Arrays.equals(bits, seenFilter.bits);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s[expectedEntries=%d,falsePositiveRate=%s,entries=%d]", getClass().getSimpleName(), expectedEntries, falsePositiveRate, entries);
+	}
+
+}
@@ -0,0 +1,805 @@
+/*
+ * Rhynodge - SingleFileStateStore.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.states;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import net.pterodactylus.rhynodge.State;
+import net.pterodactylus.rhynodge.states.StateCodec.Format;
+import net.pterodactylus.rhynodge.states.StateFileWriter.Durability;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * {@link StateStore} that keeps the states of all reactions in a single,
+ * log-structured file.
+ * <p>
+ * Every saved state is appended to the file as a record that consists of the
+ * length and the CRC32 checksum of its payload, followed by the payload: the
+ * name of the reaction, whether the record is the last state, the last
+ * successful state, or both, and the state itself, encoded by a
+ * {@link StateCodec}. The location of the current records is kept in memory;
+ * it is rebuilt by scanning the file when the store is opened. A last record
+ * that was only partially written is cut off. A record that is damaged in any
+ * other way is skipped, and a copy of the file is kept before it is compacted
+ * the next time.
+ * <p>
+ * Once the file has grown to twice the size it had after the last compaction,
+ * it is compacted: all current records are copied to a new file which then
+ * replaces the old one.
+ * <p>
+ * If a thread is interrupted while it accesses the file, the channel of the
+ * file is closed for all threads; it is opened again by the next access of a
+ * thread that has not been interrupted.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SingleFileStateStore implements StateStore {
+
+	/** The default name of the state file. */
+	public static final String DEFAULT_FILE_NAME = "states.db";
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(SingleFileStateStore.class);
+
+	/** The minimum size of the file before it is compacted (in bytes). */
+	private static final long MINIMUM_COMPACTION_SIZE = 1024 * 1024;
+
+	/** Record type for a last state. */
+	private static final byte LAST = 1;
+
+	/** Record type for a last successful state. */
+	private static final byte SUCCESS = 2;
+
+	/** Record type for a state that is both last and last successful state. */
+	private static final byte LAST_AND_SUCCESS = LAST | SUCCESS;
+
+	/** The codec for the states. */
+	private final StateCodec stateCodec;
+
+	/** The file the states are stored in. */
+	private final Path file;
+
+	/** The durability of the writes. */
+	private final Durability durability;
+
+	/** The channel of the file. */
+	/* synchronize on this store. */
+	private FileChannel fileChannel;
+
+	/** The records of the last states. */
+	/* synchronize on this store. */
+	private final Map<String, Record> lastStateRecords = Maps.newHashMap();
+
+	/** The records of the last successful states. */
+	/* synchronize on this store. */
+	private final Map<String, Record> lastSuccessfulStateRecords = Maps.newHashMap();
+
+	/** The size of the file after opening it or after the last compaction. */
+	/* synchronize on this store. */
+	private long compactedSize;
+
+	/** The position up to which the file has been written. */
+	/* synchronize on syncLock. */
+	private long writtenPosition;
+
+	/** The position up to which the file has been flushed to the disk. */
+	/* synchronize on syncLock. */
+	private long syncedPosition;
+
+	/** Lock for flushing the file. */
+	private final Object syncLock = new Object();
+
+	/** Whether this store has been closed. */
+	/* synchronize on this store. */
+	private boolean closed;
+
+	/**
+	 * Creates a new single-file state store. The file is created if it does
+	 * not exist.
+	 *
+	 * @param file
+	 *            The file to store the states in
+	 * @param durability
+	 *            The durability of written states
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	public SingleFileStateStore(Path file, Durability durability) throws IOException {
+		this(file, durability, new StateCodec(Format.JSON));
+	}
+
+	/**
+	 * Creates a new single-file state store. The file is created if it does
+	 * not exist.
+	 *
+	 * @param file
+	 *            The file to store the states in
+	 * @param durability
+	 *            The durability of written states
+	 * @param stateCodec
+	 *            The codec for the states
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	public SingleFileStateStore(Path file, Durability durability, StateCodec stateCodec) throws IOException {
+		this.file = file;
+		this.durability = durability;
+		this.stateCodec = stateCodec;
+		openFile();
+	}
+
+	//
+	// STATESTORE METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public State loadLastState(String reactionName) {
+		return loadState(reactionName, lastStateRecords);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public State loadLastSuccessfulState(String reactionName) {
+		return loadState(reactionName, lastSuccessfulStateRecords);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean saveState(String reactionName, State state, State previousSuccessfulState) {
+		long recordEnd;
+		try {
+			byte[] stateContent = stateCodec.encode(state);
+			synchronized (this) {
+				Record record = appendRecord(reactionName, state.success() ? LAST_AND_SUCCESS : LAST, stateContent);
+				recordEnd = record.offset() + record.length();
+				if (recordEnd > Math.max(MINIMUM_COMPACTION_SIZE, 2 * compactedSize)) {
+					try {
+						compact();
+					} catch (IOException ioe1) {
+						/* the record has been written, the file is just not compacted. */
+						logger.warn(String.format("Could not compact %s.", file), ioe1);
+					}
+					return true;
+				}
+			}
+			if (durability == Durability.GROUP_COMMIT) {
+				syncFile(recordEnd);
+			}
+			return true;
+		} catch (IOException ioe1) {
+			logger.warn(String.format("State for Reaction “%s” could not be written.", reactionName), ioe1);
+		}
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		try {
+			fileChannel.force(false);
+			fileChannel.close();
+		} catch (IOException ioe1) {
+			logger.warn(String.format("Could not close %s.", file), ioe1);
+		}
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Compacts the file: all current records are written to a new file which
+	 * then replaces the current file.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public synchronized void compact() throws IOException {
+		logger.debug(String.format("Compacting %s...", file));
+		openChannel();
+		Path compactedFile = file.resolveSibling(file.getFileName() + ".compact");
+		FileChannel compactedChannel = FileChannel.open(compactedFile, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			long position = 0;
+			Set<String> reactionNames = Sets.union(lastStateRecords.keySet(), lastSuccessfulStateRecords.keySet());
+			for (String reactionName : reactionNames) {
+				Record lastStateRecord = lastStateRecords.get(reactionName);
+				Record lastSuccessfulStateRecord = lastSuccessfulStateRecords.get(reactionName);
+				if ((lastSuccessfulStateRecord != null) && lastSuccessfulStateRecord.equals(lastStateRecord)) {
+					position += writeFully(compactedChannel, createRecord(reactionName, LAST_AND_SUCCESS, readRecord(lastStateRecord).stateContent()), position);
+					continue;
+				}
+				if (lastSuccessfulStateRecord != null) {
+					position += writeFully(compactedChannel, createRecord(reactionName, SUCCESS, readRecord(lastSuccessfulStateRecord).stateContent()), position);
+				}
+				if (lastStateRecord != null) {
+					position += writeFully(compactedChannel, createRecord(reactionName, LAST, readRecord(lastStateRecord).stateContent()), position);
+				}
+			}
+			compactedChannel.force(true);
+		} finally {
+			compactedChannel.close();
+		}
+		synchronized (syncLock) {
+			fileChannel.close();
+			try {
+				StateFileWriter.moveFile(compactedFile, file);
+				StateFileWriter.syncDirectory(file.toAbsolutePath().getParent());
+			} finally {
+				/* reopen the old file if the new file could not be moved. */
+				openFile();
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Opens the file and scans all records. A record that can not be read or
+	 * whose checksum does not match is skipped up to the next valid record. If
+	 * there is no valid record after it and it runs past the end of the file,
+	 * it was only partially written and is cut off. Otherwise the damaged
+	 * bytes are kept, and a copy of the file is made before the damaged
+	 * records are lost by a compaction.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private synchronized void openFile() throws IOException {
+		fileChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		lastStateRecords.clear();
+		lastSuccessfulStateRecords.clear();
+		long position = 0;
+		long size = fileChannel.size();
+		boolean copied = false;
+		while (position < size) {
+			Record record = new Record(position, 0);
+			RecordContent recordContent;
+			try {
+				recordContent = readRecord(record);
+			} catch (IOException ioe1) {
+				long nextPosition = findNextRecord(position + 1, size);
+				if ((nextPosition == -1) && isTornRecord(position, size)) {
+					logger.warn(String.format("Incomplete record at %d in %s, truncating file.", position, file), ioe1);
+					fileChannel.truncate(position);
+					size = position;
+					break;
+				}
+				if (!copied) {
+					Path copyFile = file.resolveSibling(file.getFileName() + ".corrupt");
+					Files.copy(file, copyFile, StandardCopyOption.REPLACE_EXISTING);
+					copied = true;
+				}
+				nextPosition = (nextPosition == -1) ? size : nextPosition;
+				logger.warn(String.format("Invalid record at %d in %s, skipping %d byte(s).", position, file, nextPosition - position), ioe1);
+				position = nextPosition;
+				continue;
+			}
+			record = new Record(position, recordContent.length());
+			indexRecord(recordContent.reactionName(), recordContent.type(), record);
+			position += record.length();
+		}
+		compactedSize = size;
+		synchronized (syncLock) {
+			writtenPosition = size;
+			syncedPosition = size;
+		}
+		logger.info(String.format("Loaded %d state(s) from %s.", lastStateRecords.size(), file));
+	}
+
+	/**
+	 * Searches the file for the next valid record, starting at the given
+	 * position.
+	 *
+	 * @param position
+	 *            The position to start searching at
+	 * @param size
+	 *            The size of the file
+	 * @return The position of the next valid record, or {@code -1} if there is
+	 *         no valid record
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private long findNextRecord(long position, long size) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(10);
+		ByteBuffer typeAndLength = ByteBuffer.allocate(5);
+		for (long candidate = position; (candidate + 15) <= size; ++candidate) {
+			/* check the structure of the payload before the checksum. */
+			header.clear();
+			readFully(fileChannel, header, candidate);
+			int payloadLength = header.getInt(0);
+			int nameLength = header.getShort(8) & 0xffff;
+			if ((payloadLength < (nameLength + 7)) || ((candidate + 8 + payloadLength) > size)) {
+				continue;
+			}
+			typeAndLength.clear();
+			readFully(fileChannel, typeAndLength, candidate + 10 + nameLength);
+			byte type = typeAndLength.get(0);
+			if ((type < LAST) || (type > LAST_AND_SUCCESS) || (typeAndLength.getInt(1) != (payloadLength - nameLength - 7))) {
+				continue;
+			}
+			try {
+				readRecord(new Record(candidate, 0));
+				return candidate;
+			} catch (IOException ioe1) {
+				/* not a valid record, continue searching. */
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns whether the record at the given position was only partially
+	 * written, i.e. whether its header or its payload runs past the end of the
+	 * file.
+	 *
+	 * @param position
+	 *            The position of the record
+	 * @param size
+	 *            The size of the file
+	 * @return {@code true} if the record runs past the end of the file,
+	 *         {@code false} otherwise
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private boolean isTornRecord(long position, long size) throws IOException {
+		if ((position + 8) > size) {
+			return true;
+		}
+		ByteBuffer header = ByteBuffer.allocate(8);
+		readFully(fileChannel, header, position);
+		int payloadLength = header.getInt(0);
+		return (payloadLength >= 0) && ((position + 8 + payloadLength) > size);
+	}
+
+	/**
+	 * Loads the state of the given reaction from the record stored in the
+	 * given records. Only looking up the record holds the lock of this store;
+	 * the record is read with positional reads, so that states can be loaded
+	 * in parallel. If the file is compacted or its channel is closed by an
+	 * interrupt of another thread while the record is read, the record is
+	 * looked up again.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param records
+	 *            The records to load the record from
+	 * @return The loaded state, or {@code null} if the state could not be
+	 *         loaded
+	 */
+	private State loadState(String reactionName, Map<String, Record> records) {
+		while (true) {
+			try {
+				Record record;
+				FileChannel channel;
+				synchronized (this) {
+					channel = openChannel();
+					record = records.get(reactionName);
+				}
+				if (record == null) {
+					return null;
+				}
+				return stateCodec.decode(readRecord(channel, record).stateContent());
+			} catch (ClosedChannelException cce1) {
+				/* closed by a compaction or an interrupt of another thread. */
+				boolean retry;
+				synchronized (this) {
+					retry = !closed && !Thread.currentThread().isInterrupted();
+				}
+				if (retry) {
+					continue;
+				}
+				logger.warn(String.format("State for Reaction “%s” could not be loaded.", reactionName), cce1);
+			} catch (IOException ioe1) {
+				logger.warn(String.format("State for Reaction “%s” could not be loaded.", reactionName), ioe1);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Appends a record to the file and indexes it.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param type
+	 *            The type of the record
+	 * @param stateContent
+	 *            The serialized state
+	 * @return The appended record
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private Record appendRecord(String reactionName, byte type, byte[] stateContent) throws IOException {
+		byte[] recordBytes = createRecord(reactionName, type, stateContent);
+		FileChannel channel = openChannel();
+		long position = channel.size();
+		writeFully(channel, recordBytes, position);
+		if (durability == Durability.SYNC) {
+			channel.force(false);
+		}
+		synchronized (syncLock) {
+			writtenPosition = position + recordBytes.length;
+			if (durability == Durability.SYNC) {
+				syncedPosition = writtenPosition;
+			}
+		}
+		Record record = new Record(position, recordBytes.length);
+		indexRecord(reactionName, type, record);
+		return record;
+	}
+
+	/**
+	 * Returns the channel of the file. If the channel has been closed because
+	 * a thread was interrupted while using it, the file is opened and scanned
+	 * again, cutting off a record that was only partially written, and it is
+	 * flushed as the records written before can not be flushed anymore.
+	 *
+	 * @return The channel of the file
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	private synchronized FileChannel openChannel() throws IOException {
+		if (!closed && !fileChannel.isOpen()) {
+			logger.warn(String.format("%s has been closed by an interrupted thread, reopening.", file));
+			openFile();
+			if (durability != Durability.NONE) {
+				fileChannel.force(false);
+			}
+		}
+		return fileChannel;
+	}
+
+	/**
+	 * Flushes the file to the disk if the given position has not been flushed
+	 * yet. All records written by other threads in the meantime are flushed
+	 * along with it.
+	 *
+	 * @param position
+	 *            The position that needs to be flushed
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void syncFile(long position) throws IOException {
+		synchronized (syncLock) {
+			if (syncedPosition >= position) {
+				return;
+			}
+			long newSyncedPosition = writtenPosition;
+			fileChannel.force(false);
+			syncedPosition = newSyncedPosition;
+		}
+	}
+
+	/**
+	 * Stores the given record in the index.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param type
+	 *            The type of the record
+	 * @param record
+	 *            The record
+	 */
+	private void indexRecord(String reactionName, byte type, Record record) {
+		if ((type & LAST) != 0) {
+			lastStateRecords.put(reactionName, record);
+		}
+		if ((type & SUCCESS) != 0) {
+			lastSuccessfulStateRecords.put(reactionName, record);
+		}
+	}
+
+	/**
+	 * Reads and verifies the record at the given position.
+	 *
+	 * @param record
+	 *            The record to read; only the offset is used
+	 * @return The content of the record
+	 * @throws IOException
+	 *             if the record can not be read or is invalid
+	 */
+	private RecordContent readRecord(Record record) throws IOException {
+		return readRecord(fileChannel, record);
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Reads and verifies the record at the given position of the given
+	 * channel.
+	 *
+	 * @param channel
+	 *            The channel to read from
+	 * @param record
+	 *            The record to read; only the offset is used
+	 * @return The content of the record
+	 * @throws IOException
+	 *             if the record can not be read or is invalid
+	 */
+	private static RecordContent readRecord(FileChannel channel, Record record) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(8);
+		readFully(channel, header, record.offset());
+		int payloadLength = header.getInt(0);
+		int checksum = header.getInt(4);
+		if ((payloadLength < 0) || ((record.offset() + 8 + payloadLength) > channel.size())) {
+			throw new IOException(String.format("Invalid record length: %d", payloadLength));
+		}
+		ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+		readFully(channel, payload, record.offset() + 8);
+		CRC32 crc32 = new CRC32();
+		crc32.update(payload.array());
+		if ((int) crc32.getValue() != checksum) {
+			throw new IOException("Checksum mismatch.");
+		}
+		DataInputStream payloadStream = new DataInputStream(new ByteArrayInputStream(payload.array()));
+		String reactionName = payloadStream.readUTF();
+		byte type = payloadStream.readByte();
+		byte[] stateContent = new byte[payloadStream.readInt()];
+		payloadStream.readFully(stateContent);
+		return new RecordContent(reactionName, type, stateContent, 8 + payloadLength);
+	}
+
+	/**
+	 * Creates the bytes of a record.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param type
+	 *            The type of the record
+	 * @param stateContent
+	 *            The serialized state
+	 * @return The bytes of the record
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static byte[] createRecord(String reactionName, byte type, byte[] stateContent) throws IOException {
+		ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(stateContent.length + reactionName.length() + 16);
+		DataOutputStream payloadStream = new DataOutputStream(payloadBytes);
+		payloadStream.writeUTF(reactionName);
+		payloadStream.writeByte(type);
+		payloadStream.writeInt(stateContent.length);
+		payloadStream.write(stateContent);
+		payloadStream.flush();
+		byte[] payload = payloadBytes.toByteArray();
+		CRC32 crc32 = new CRC32();
+		crc32.update(payload);
+		ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+		record.putInt(payload.length);
+		record.putInt((int) crc32.getValue());
+		record.put(payload);
+		return record.array();
+	}
+
+	/**
+	 * Writes the given bytes at the given position of the given channel.
+	 *
+	 * @param channel
+	 *            The channel to write to
+	 * @param bytes
+	 *            The bytes to write
+	 * @param position
+	 *            The position to write at
+	 * @return The number of written bytes
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static int writeFully(FileChannel channel, byte[] bytes, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+		return bytes.length;
+	}
+
+	/**
+	 * Fills the given buffer with bytes from the given position of the given
+	 * channel.
+	 *
+	 * @param channel
+	 *            The channel to read from
+	 * @param buffer
+	 *            The buffer to fill
+	 * @param position
+	 *            The position to read from
+	 * @throws IOException
+	 *             if the end of the channel is reached before the buffer is
+	 *             filled, or an I/O error occurs
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file.");
+			}
+		}
+	}
+
+	/**
+	 * The location of a record in the file.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class Record {
+
+		/** The offset of the record. */
+		private final long offset;
+
+		/** The length of the record. */
+		private final int length;
+
+		/**
+		 * Creates a new record.
+		 *
+		 * @param offset
+		 *            The offset of the record
+		 * @param length
+		 *            The length of the record
+		 */
+		public Record(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * Returns the offset of the record.
+		 *
+		 * @return The offset of the record
+		 */
+		public long offset() {
+			return offset;
+		}
+
+		/**
+		 * Returns the length of the record, including its header.
+		 *
+		 * @return The length of the record
+		 */
+		public int length() {
+			return length;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			return (int) (offset ^ (offset >>> 32));
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Record)) {
+				return false;
+			}
+			return offset == ((Record) object).offset;
+		}
+
+	}
+
+	/**
+	 * The content of a record.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class RecordContent {
+
+		/** The name of the reaction. */
+		private final String reactionName;
+
+		/** The type of the record. */
+		private final byte type;
+
+		/** The serialized state. */
+		private final byte[] stateContent;
+
+		/** The length of the record, including its header. */
+		private final int length;
+
+		/**
+		 * Creates new record content.
+		 *
+		 * @param reactionName
+		 *            The name of the reaction
+		 * @param type
+		 *            The type of the record
+		 * @param stateContent
+		 *            The serialized state
+		 * @param length
+		 *            The length of the record, including its header
+		 */
+		public RecordContent(String reactionName, byte type, byte[] stateContent, int length) {
+			this.reactionName = reactionName;
+			this.type = type;
+			this.stateContent = stateContent;
+			this.length = length;
+		}
+
+		/**
+		 * Returns the name of the reaction.
+		 *
+		 * @return The name of the reaction
+		 */
+		public String reactionName() {
+			return reactionName;
+		}
+
+		/**
+		 * Returns the type of the record.
+		 *
+		 * @return The type of the record
+		 */
+		public byte type() {
+			return type;
+		}
+
+		/**
+		 * Returns the serialized state.
+		 *
+		 * @return The serialized state
+		 */
+		public byte[] stateContent() {
+			return stateContent;
+		}
+
+		/**
+		 * Returns the length of the record, including its header.
+		 *
+		 * @return The length of the record
+		 */
+		public int length() {
+			return length;
+		}
+
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Rhynodge - StateCodec.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.states;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import net.pterodactylus.rhynodge.State;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * Converts {@link State}s to bytes and back. States are written in the
+ * {@link Format} given at construction time; when reading, the format is
+ * detected from the content so that states written in any format can always
+ * be read.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class StateCodec {
+
+	/**
+	 * The format states are written in.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public enum Format {
+
+		/** Human-readable JSON. */
+		JSON("json"),
+
+		/**
+		 * Smile, a binary encoding of JSON that is smaller and faster to
+		 * parse, especially for states with many repeated property names.
+		 */
+		SMILE("smile");
+
+		/** The extension of files in this format. */
+		private final String extension;
+
+		/**
+		 * Creates a new format.
+		 *
+		 * @param extension
+		 *            The extension of files in this format
+		 */
+		private Format(String extension) {
+			this.extension = extension;
+		}
+
+		/**
+		 * Returns the extension of files in this format.
+		 *
+		 * @return The extension of files in this format (without the dot)
+		 */
+		public String extension() {
+			return extension;
+		}
+
+	}
+
+	/** The header every Smile document starts with. */
+	private static final byte[] SMILE_HEADER = { ':', ')', '\n' };
+
+	/** Object mapper for JSON. */
+	private final ObjectMapper jsonObjectMapper = new ObjectMapper();
+
+	/** Object mapper for Smile. */
+	private final ObjectMapper smileObjectMapper;
+
+	/** The format to write states in. */
+	private final Format format;
+
+	/**
+	 * Creates a new state codec.
+	 *
+	 * @param format
+	 *            The format to write states in
+	 */
+	public StateCodec(Format format) {
+		this.format = format;
+		SmileFactory smileFactory = new SmileFactory();
+		smileFactory.enable(SmileGenerator.Feature.WRITE_HEADER);
+		smileFactory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+		smileObjectMapper = new ObjectMapper(smileFactory);
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the format states are written in.
+	 *
+	 * @return The format states are written in
+	 */
+	public Format format() {
+		return format;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Encodes the given state.
+	 *
+	 * @param state
+	 *            The state to encode
+	 * @return The encoded state
+	 * @throws IOException
+	 *             if the state can not be encoded
+	 */
+	public byte[] encode(State state) throws IOException {
+		return ((format == Format.SMILE) ? smileObjectMapper : jsonObjectMapper).writeValueAsBytes(state);
+	}
+
+	/**
+	 * Decodes a state, detecting the format it was written in.
+	 *
+	 * @param content
+	 *            The encoded state
+	 * @return The decoded state
+	 * @throws IOException
+	 *             if the state can not be decoded
+	 */
+	public State decode(byte[] content) throws IOException {
+		return (isSmile(content) ? smileObjectMapper : jsonObjectMapper).readValue(content, AbstractState.class);
+	}
+
+	/**
+	 * Reads and decodes the state from the given file, detecting the format
+	 * it was written in.
+	 *
+	 * @param file
+	 *            The file to read
+	 * @return The decoded state
+	 * @throws IOException
+	 *             if the file can not be read or the state can not be
+	 *             decoded
+	 */
+	public State decode(File file) throws IOException {
+		return decode(Files.readAllBytes(file.toPath()));
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns whether the given content is a Smile document.
+	 *
+	 * @param content
+	 *            The content to check
+	 * @return {@code true} if the content starts with the Smile header,
+	 *         {@code false} otherwise
+	 */
+	private static boolean isSmile(byte[] content) {
+		if (content.length < SMILE_HEADER.length) {
+			return false;
+		}
+		for (int index = 0; index < SMILE_HEADER.length; ++index) {
+			if (content[index] != SMILE_HEADER[index]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,463 @@
+/*
+ * Rhynodge - StateFileWriter.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.states;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Writes files in a crash-safe manner: the content is written to a temporary
+ * file in the same directory which is then atomically renamed over the
+ * target file. A target file thus always contains either its old or its new
+ * content, never a partially written one.
+ * <p>
+ * When to flush data to the disk is controlled by the {@link Durability}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class StateFileWriter {
+
+	/**
+	 * Controls when written files are flushed to the disk.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public enum Durability {
+
+		/**
+		 * Files are never explicitely flushed; the operating system decides
+		 * when data is written to the disk. After a crash a file may contain
+		 * its old content, its new content, or no content at all.
+		 */
+		NONE,
+
+		/**
+		 * Every caller flushes the data of its own files without holding a
+		 * lock so that flushes of concurrent callers overlap; the renames of
+		 * concurrent callers are then collected and made durable with a single
+		 * directory flush. Every write is durable once
+		 * {@link StateFileWriter#write} returns.
+		 */
+		GROUP_COMMIT,
+
+		/**
+		 * Every write is flushed to the disk on its own before
+		 * {@link StateFileWriter#write} returns.
+		 */
+		SYNC
+
+	}
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(StateFileWriter.class);
+
+	/** The durability of the writes. */
+	private final Durability durability;
+
+	/** Writes that have not been committed yet. */
+	/* synchronize on itself. */
+	private final List<PendingWrite> pendingWrites = Lists.newArrayList();
+
+	/** Lock that is held while pending writes are committed. */
+	private final Object commitLock = new Object();
+
+	/**
+	 * Creates a new state file writer.
+	 *
+	 * @param durability
+	 *            The durability of the writes
+	 */
+	public StateFileWriter(Durability durability) {
+		this.durability = durability;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Writes the given content to the given file and, optionally, to further
+	 * files in the same directory. The content is only written once; the
+	 * additional files are created as hard links to it, if the file system
+	 * supports it.
+	 *
+	 * @param content
+	 *            The content to write
+	 * @param file
+	 *            The file to write
+	 * @param additionalFiles
+	 *            Additional files that should receive the same content
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void write(byte[] content, Path file, Path... additionalFiles) throws IOException {
+		PendingWrite pendingWrite = new PendingWrite(file.toAbsolutePath().getParent());
+		try {
+			Path temporaryFile = createTemporaryFile(file);
+			pendingWrite.addMove(temporaryFile, file);
+			writeFile(temporaryFile, content);
+			for (Path additionalFile : additionalFiles) {
+				Path temporaryLink = createTemporaryLink(additionalFile, temporaryFile, content);
+				pendingWrite.addMove(temporaryLink, additionalFile);
+			}
+			if (durability != Durability.NONE) {
+				pendingWrite.syncFiles();
+			}
+		} catch (IOException ioe1) {
+			pendingWrite.deleteTemporaryFiles();
+			throw ioe1;
+		}
+
+		if (durability == Durability.GROUP_COMMIT) {
+			synchronized (pendingWrites) {
+				pendingWrites.add(pendingWrite);
+			}
+			synchronized (commitLock) {
+				if (!pendingWrite.committed()) {
+					commitPendingWrites();
+				}
+			}
+			pendingWrite.throwFailure();
+			return;
+		}
+
+		pendingWrite.moveFiles();
+		if (durability == Durability.SYNC) {
+			syncDirectory(pendingWrite.directory());
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Commits all pending writes, including those of other threads, using a
+	 * single directory flush per directory. The data of the pending writes has
+	 * already been flushed by their writers. Must only be called while holding
+	 * {@link #commitLock}.
+	 */
+	private void commitPendingWrites() {
+		List<PendingWrite> writesToCommit;
+		synchronized (pendingWrites) {
+			writesToCommit = Lists.newArrayList(pendingWrites);
+			pendingWrites.clear();
+		}
+		logger.debug(String.format("Committing %d write(s)...", writesToCommit.size()));
+		Set<Path> directories = Sets.newHashSet();
+		for (PendingWrite pendingWrite : writesToCommit) {
+			try {
+				pendingWrite.moveFiles();
+				directories.add(pendingWrite.directory());
+			} catch (IOException ioe1) {
+				pendingWrite.setFailure(ioe1);
+			}
+		}
+		for (Path directory : directories) {
+			syncDirectory(directory);
+		}
+		for (PendingWrite pendingWrite : writesToCommit) {
+			pendingWrite.setCommitted();
+		}
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns the name of a new temporary file next to the given file. The
+	 * file itself is not created so that it receives the same default
+	 * permissions as any other file.
+	 *
+	 * @param file
+	 *            The file to create a temporary file for
+	 * @return The temporary file
+	 */
+	private static Path createTemporaryFile(Path file) {
+		return file.resolveSibling(String.format("%s.%s.tmp", file.getFileName(), UUID.randomUUID()));
+	}
+
+	/**
+	 * Creates a temporary hard link to the given temporary file next to the
+	 * given file. If the file system does not support hard links, the content
+	 * is written to a new temporary file instead.
+	 *
+	 * @param file
+	 *            The file to create a temporary link for
+	 * @param temporaryFile
+	 *            The temporary file to link to
+	 * @param content
+	 *            The content to write if hard links are not supported
+	 * @return The temporary link
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static Path createTemporaryLink(Path file, Path temporaryFile, byte[] content) throws IOException {
+		Path temporaryLink = createTemporaryFile(file);
+		try {
+			return Files.createLink(temporaryLink, temporaryFile);
+		} catch (UnsupportedOperationException uoe1) {
+			/* fall back to writing the content again. */
+		} catch (IOException ioe1) {
+			logger.debug(String.format("Could not link %s to %s, writing file.", temporaryLink, temporaryFile), ioe1);
+		}
+		writeFile(temporaryLink, content);
+		return temporaryLink;
+	}
+
+	/**
+	 * Writes the given content to the given file.
+	 *
+	 * @param file
+	 *            The file to write
+	 * @param content
+	 *            The content to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static void writeFile(Path file, byte[] content) throws IOException {
+		FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(content);
+			while (buffer.hasRemaining()) {
+				fileChannel.write(buffer);
+			}
+		} finally {
+			fileChannel.close();
+		}
+	}
+
+	/**
+	 * Flushes the data of the given file to the disk. Metadata that is not
+	 * required to read the data back, such as the modification time, is not
+	 * flushed.
+	 *
+	 * @param file
+	 *            The file to flush
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static void syncFile(Path file) throws IOException {
+		FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.WRITE);
+		try {
+			fileChannel.force(false);
+		} finally {
+			fileChannel.close();
+		}
+	}
+
+	/**
+	 * Flushes the given directory to the disk, making renames of files in the
+	 * directory durable. Not all platforms support this; failures are
+	 * ignored.
+	 *
+	 * @param directory
+	 *            The directory to flush
+	 */
+	static void syncDirectory(Path directory) {
+		try {
+			FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ);
+			try {
+				directoryChannel.force(true);
+			} finally {
+				directoryChannel.close();
+			}
+		} catch (IOException ioe1) {
+			logger.debug(String.format("Could not sync directory %s.", directory), ioe1);
+		}
+	}
+
+	/**
+	 * Moves the given source file over the given target file, atomically if
+	 * the file system supports it.
+	 *
+	 * @param source
+	 *            The file to move
+	 * @param target
+	 *            The file to replace
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	static void moveFile(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException amnse1) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * A write whose temporary files have been written but not yet moved to
+	 * their target files.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class PendingWrite {
+
+		/** The directory of the target files. */
+		private final Path directory;
+
+		/** The temporary files and their target files. */
+		private final List<Pair<Path, Path>> moves = Lists.newArrayList();
+
+		/** Whether this write has been committed. */
+		private volatile boolean committed;
+
+		/** The exception that occured while committing. */
+		private volatile IOException failure;
+
+		/**
+		 * Creates a new pending write.
+		 *
+		 * @param directory
+		 *            The directory of the target files
+		 */
+		public PendingWrite(Path directory) {
+			this.directory = directory;
+		}
+
+		//
+		// ACCESSORS
+		//
+
+		/**
+		 * Returns the directory of the target files.
+		 *
+		 * @return The directory of the target files
+		 */
+		public Path directory() {
+			return directory;
+		}
+
+		/**
+		 * Returns whether this write has been committed.
+		 *
+		 * @return {@code true} if this write has been committed, {@code false}
+		 *         otherwise
+		 */
+		public boolean committed() {
+			return committed;
+		}
+
+		/**
+		 * Marks this write as committed.
+		 */
+		public void setCommitted() {
+			committed = true;
+		}
+
+		/**
+		 * Sets the exception that occured while committing this write.
+		 *
+		 * @param failure
+		 *            The exception that occured
+		 */
+		public void setFailure(IOException failure) {
+			this.failure = failure;
+		}
+
+		//
+		// ACTIONS
+		//
+
+		/**
+		 * Adds a temporary file that will be moved to the given target file.
+		 *
+		 * @param temporaryFile
+		 *            The temporary file
+		 * @param targetFile
+		 *            The target file
+		 */
+		public void addMove(Path temporaryFile, Path targetFile) {
+			moves.add(Pair.of(temporaryFile, targetFile));
+		}
+
+		/**
+		 * Flushes the data of all temporary files to the disk.
+		 *
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		public void syncFiles() throws IOException {
+			for (Pair<Path, Path> move : moves) {
+				syncFile(move.getLeft());
+			}
+		}
+
+		/**
+		 * Moves all temporary files over their target files. Temporary files
+		 * that could not be moved are deleted.
+		 *
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		public void moveFiles() throws IOException {
+			try {
+				for (Pair<Path, Path> move : moves) {
+					moveFile(move.getLeft(), move.getRight());
+				}
+			} finally {
+				deleteTemporaryFiles();
+			}
+		}
+
+		/**
+		 * Deletes all temporary files that still exist.
+		 */
+		public void deleteTemporaryFiles() {
+			for (Pair<Path, Path> move : moves) {
+				try {
+					Files.deleteIfExists(move.getLeft());
+				} catch (IOException ioe1) {
+					logger.debug(String.format("Could not delete %s.", move.getLeft()), ioe1);
+				}
+			}
+		}
+
+		/**
+		 * Throws the exception that occured while committing this write, if
+		 * any.
+		 *
+		 * @throws IOException
+		 *             if an I/O error occured while committing this write
+		 */
+		public void throwFailure() throws IOException {
+			if (failure != null) {
+				throw failure;
+			}
+		}
+
+	}
+
+}
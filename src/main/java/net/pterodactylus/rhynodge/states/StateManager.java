@@ -17,42 +17,103 @@
 
 package net.pterodactylus.rhynodge.states;
 
-import java.io.File;
-import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.pterodactylus.rhynodge.State;
+import net.pterodactylus.rhynodge.states.EpisodeState.Episode;
+import net.pterodactylus.rhynodge.states.StateFileWriter.Durability;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
 
-import com.fasterxml.jackson.core.JsonGenerationException;
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Lists;
 
 /**
  * Loads and saves {@link State}s.
+ * <p>
+ * States are persisted by a {@link StateStore}. The last state and the last
+ * successful state of every reaction are kept together in a cache so that
+ * they only need to be loaded from the store once. Saved states are written
+ * to the store and stored in the cache at the same time. The cache is bounded
+ * by the total weight of the cached states; the weight of a state is roughly
+ * the number of torrent files it contains (see {@link #weigh(State)}). If the
+ * last state is also the last successful state, it is only weighed once. The
+ * cache consists of a single segment so that the whole maximum weight is
+ * available to every state.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
 public class StateManager {
 
+	/** The default maximum weight of all cached states. */
+	public static final long DEFAULT_MAXIMUM_CACHE_WEIGHT = 100000;
+
 	/** The logger. */
 	private static final Logger logger = Logger.getLogger(StateManager.class);
 
-	/** Jackson object mapper. */
-	private final ObjectMapper objectMapper = new ObjectMapper();
+	/** The store for the states. */
+	private final StateStore stateStore;
 
-	/** The directory in which to store states. */
-	private final String directory;
+	/** The maximum weight of all cached states. */
+	private final long maximumCacheWeight;
 
 	/**
-	 * Creates a new state manager. The given directory is assumed to exist.
+	 * The cached last states (left) and last successful states (right), keyed
+	 * by reaction name.
+	 */
+	private final LoadingCache<String, Pair<State, State>> stateCache;
+
+	/**
+	 * Creates a new state manager that stores states in JSON files in the
+	 * given directory, using {@link Durability#NONE} and a cache of
+	 * {@link #DEFAULT_MAXIMUM_CACHE_WEIGHT}. The given directory is assumed to
+	 * exist.
 	 *
 	 * @param directory
 	 *            The directory to store states in
 	 */
 	public StateManager(String directory) {
-		this.directory = directory;
+		this(new JsonStateStore(directory, Durability.NONE), DEFAULT_MAXIMUM_CACHE_WEIGHT);
+	}
+
+	/**
+	 * Creates a new state manager.
+	 *
+	 * @param stateStore
+	 *            The store for the states
+	 * @param maximumCacheWeight
+	 *            The maximum weight of all cached states
+	 */
+	public StateManager(final StateStore stateStore, long maximumCacheWeight) {
+		this.stateStore = stateStore;
+		this.maximumCacheWeight = maximumCacheWeight;
+		/* with more than one segment, every segment only gets a part of the weight. */
+		this.stateCache = CacheBuilder.newBuilder().concurrencyLevel(1).maximumWeight(maximumCacheWeight).weigher(new Weigher<String, Pair<State, State>>() {
+
+			@Override
+			public int weigh(String reactionName, Pair<State, State> states) {
+				return 1 + StateManager.weigh(states.getLeft()) + ((states.getRight() != states.getLeft()) ? StateManager.weigh(states.getRight()) : 0);
+			}
+		}).build(new CacheLoader<String, Pair<State, State>>() {
+
+			@Override
+			public Pair<State, State> load(String reactionName) {
+				State lastState = stateStore.loadLastState(reactionName);
+				if ((lastState != null) && lastState.success()) {
+					return Pair.of(lastState, lastState);
+				}
+				return Pair.of(lastState, stateStore.loadLastSuccessfulState(reactionName));
+			}
+		});
 	}
 
 	//
@@ -68,7 +129,7 @@ public class StateManager {
 	 *         loaded
 	 */
 	public State loadLastState(String reactionName) {
-		return loadLastState(reactionName, false);
+		return stateCache.getUnchecked(reactionName).getLeft();
 	}
 
 	/**
@@ -80,75 +141,112 @@ public class StateManager {
 	 *         loaded
 	 */
 	public State loadLastSuccessfulState(String reactionName) {
-		return loadLastState(reactionName, true);
+		return stateCache.getUnchecked(reactionName).getRight();
+	}
+
+	/**
+	 * Loads the last state and the last successful state of the given
+	 * reactions into the cache, using the given executor to load the states
+	 * of several reactions in parallel. Preloading stops once the loaded
+	 * states fill the cache, as further states would only evict states that
+	 * have just been loaded; the remaining states are loaded when they are
+	 * first needed. States that can not be loaded are skipped; the error is
+	 * reported once they are loaded again.
+	 *
+	 * @param reactionNames
+	 *            The names of the reactions
+	 * @param executorService
+	 *            The executor to load the states with
+	 * @return The number of reactions whose states have been loaded
+	 * @throws InterruptedException
+	 *             if the current thread is interrupted while waiting
+	 */
+	public int preloadStates(Collection<String> reactionNames, ExecutorService executorService) throws InterruptedException {
+		final AtomicLong preloadedWeight = new AtomicLong();
+		final AtomicInteger preloadedReactions = new AtomicInteger();
+		List<Callable<Void>> stateLoaders = Lists.newArrayListWithCapacity(reactionNames.size());
+		for (final String reactionName : reactionNames) {
+			stateLoaders.add(new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					if (preloadedWeight.get() >= maximumCacheWeight) {
+						return null;
+					}
+					Pair<State, State> states = stateCache.getUnchecked(reactionName);
+					preloadedWeight.addAndGet(weigh(states.getLeft()) + ((states.getRight() != states.getLeft()) ? weigh(states.getRight()) : 0));
+					preloadedReactions.incrementAndGet();
+					return null;
+				}
+			});
+		}
+		executorService.invokeAll(stateLoaders);
+		if (preloadedReactions.get() < reactionNames.size()) {
+			logger.info(String.format("Preloaded states of %d of %d Reaction(s), the state cache is full.", preloadedReactions.get(), reactionNames.size()));
+		}
+		return preloadedReactions.get();
 	}
 
 	/**
-	 * Saves the given state under the given name.
+	 * Saves the given state under the given name. The state is only stored in
+	 * the cache once it has been written to the store, so that the cache never
+	 * contains states the store does not know; stores that only write the
+	 * differences to the previous state rely on that. If the state can not be
+	 * written, the cached states of the reaction are discarded and loaded from
+	 * the store again when they are next needed.
 	 *
 	 * @param reactionName
 	 *            The name of the reaction
 	 * @param state
 	 *            The state to save
+	 * @return {@code true} if the state has been written, {@code false}
+	 *         otherwise
 	 */
-	public void saveState(String reactionName, State state) {
-		try {
-			File stateFile = stateFile(reactionName, "last");
-			objectMapper.writeValue(stateFile, state);
-			if (state.success()) {
-				stateFile = stateFile(reactionName, "success");
-				objectMapper.writeValue(stateFile, state);
-			}
-		} catch (JsonGenerationException jge1) {
-			logger.warn(String.format("State for Reaction “%s” could not be generated.", reactionName), jge1);
-		} catch (JsonMappingException jme1) {
-			logger.warn(String.format("State for Reaction “%s” could not be generated.", reactionName), jme1);
-		} catch (IOException ioe1) {
-			logger.warn(String.format("State for Reaction “%s” could not be written.", reactionName));
+	public boolean saveState(String reactionName, State state) {
+		State previousSuccessfulState = loadLastSuccessfulState(reactionName);
+		if (!stateStore.saveState(reactionName, state, previousSuccessfulState)) {
+			stateCache.invalidate(reactionName);
+			return false;
 		}
+		stateCache.put(reactionName, Pair.of(state, state.success() ? state : previousSuccessfulState));
+		return true;
 	}
 
-	//
-	// PRIVATE METHODS
-	//
-
 	/**
-	 * Returns the file for the state with the given name.
-	 *
-	 * @param reactionName
-	 *            The name of the reaction
-	 * @param suffix
-	 *            An additional suffix (may be {@code null}
-	 * @return The file for the state
+	 * Closes the underlying {@link StateStore}.
 	 */
-	private File stateFile(String reactionName, String suffix) {
-		return new File(directory, reactionName + ((suffix != null) ? "." + suffix : "") + ".json");
+	public void close() {
+		stateStore.close();
 	}
 
+	//
+	// STATIC METHODS
+	//
+
 	/**
-	 * Load the given state for the reaction with the given name.
+	 * Returns the weight of the given state for the state cache. States that
+	 * contain torrent files weigh one unit per torrent file, all other states
+	 * weigh one unit.
 	 *
-	 * @param reactionName
-	 *            The name of the reaction
-	 * @param successful
-	 *            {@code true} to load the last successful state, {@code false}
-	 *            to load the last state
-	 * @return The loaded state, or {@code null} if the state could not be
-	 *         loaded
+	 * @param state
+	 *            The state to weigh (may be {@code null})
+	 * @return The weight of the state
 	 */
-	private State loadLastState(String reactionName, boolean successful) {
-		File stateFile = stateFile(reactionName, successful ? "success" : "last");
-		try {
-			State state = objectMapper.readValue(stateFile, AbstractState.class);
-			return state;
-		} catch (JsonParseException jpe1) {
-			logger.warn(String.format("State for Reaction “%s” could not be parsed.", reactionName), jpe1);
-		} catch (JsonMappingException jme1) {
-			logger.warn(String.format("State for Reaction “%s” could not be parsed.", reactionName), jme1);
-		} catch (IOException ioe1) {
-			logger.info(String.format("State for Reaction “%s” could not be found.", reactionName));
+	private static int weigh(State state) {
+		if (state == null) {
+			return 0;
+		}
+		if (state instanceof TorrentState) {
+			return 1 + ((TorrentState) state).torrentFiles().size();
+		}
+		if (state instanceof EpisodeState) {
+			int weight = 1;
+			for (Episode episode : (EpisodeState) state) {
+				weight += episode.torrentFiles().size();
+			}
+			return weight;
 		}
-		return null;
+		return 1;
 	}
 
 }
@@ -0,0 +1,79 @@
+/*
+ * Rhynodge - StateStore.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.states;
+
+import net.pterodactylus.rhynodge.State;
+
+/**
+ * Persistent storage for the last state and the last successful state of
+ * reactions. The {@link StateManager} uses a state store to load states it
+ * does not have in its cache and to write saved states.
+ * <p>
+ * Implementations have to be thread-safe; states of different reactions may
+ * be loaded and saved concurrently.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public interface StateStore {
+
+	/**
+	 * Loads the last state of the reaction with the given name.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @return The loaded state, or {@code null} if the state could not be
+	 *         loaded
+	 */
+	State loadLastState(String reactionName);
+
+	/**
+	 * Loads the last successful state of the reaction with the given name.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @return The loaded state, or {@code null} if the state could not be
+	 *         loaded
+	 */
+	State loadLastSuccessfulState(String reactionName);
+
+	/**
+	 * Saves the given state as last state of the reaction with the given name.
+	 * If the state is successful it is also saved as the last successful
+	 * state. Errors are logged; the caller only learns whether the state has
+	 * been written.
+	 *
+	 * @param reactionName
+	 *            The name of the reaction
+	 * @param state
+	 *            The state to save
+	 * @param previousSuccessfulState
+	 *            The last successful state that was saved before the given
+	 *            state, or {@code null} if it is not known; stores may use it
+	 *            to only write the differences between the two states
+	 * @return {@code true} if the state has been written, {@code false} if it
+	 *         could not be written
+	 */
+	boolean saveState(String reactionName, State state, State previousSuccessfulState);
+
+	/**
+	 * Releases all resources used by this store. Writes that are still in
+	 * progress are finished before this method returns.
+	 */
+	void close();
+
+}
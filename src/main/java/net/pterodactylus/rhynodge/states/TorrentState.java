@@ -17,7 +17,8 @@
 
 package net.pterodactylus.rhynodge.states;
 
-import java.nio.charset.Charset;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -26,9 +27,8 @@ import java.util.List;
 import net.pterodactylus.rhynodge.State;
 import net.pterodactylus.rhynodge.states.TorrentState.TorrentFile;
 
-import org.apache.http.NameValuePair;
-import org.apache.http.client.utils.URLEncodedUtils;
-
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.Lists;
 
@@ -44,6 +44,11 @@ public class TorrentState extends AbstractState implements Iterable<TorrentFile>
 	@JsonProperty
 	private List<TorrentFile> files = Lists.newArrayList();
 
+	/** The optional filter of torrent files that have been seen before. */
+	@JsonProperty
+	@JsonInclude(Include.NON_NULL)
+	private SeenFilter seenFilter;
+
 	/**
 	 * Creates a new torrent state without torrent files.
 	 */
@@ -74,6 +79,30 @@ public class TorrentState extends AbstractState implements Iterable<TorrentFile>
 		return Collections.unmodifiableList(files);
 	}
 
+	/**
+	 * Returns the filter of torrent files that have been seen before but are
+	 * no longer contained in this state.
+	 *
+	 * @return The seen filter of this state, or {@code null} if this state
+	 *         does not have a seen filter
+	 */
+	public SeenFilter seenFilter() {
+		return seenFilter;
+	}
+
+	/**
+	 * Sets the filter of torrent files that have been seen before but are no
+	 * longer contained in this state.
+	 *
+	 * @param seenFilter
+	 *            The seen filter of this state
+	 * @return This state
+	 */
+	public TorrentState setSeenFilter(SeenFilter seenFilter) {
+		this.seenFilter = seenFilter;
+		return this;
+	}
+
 	/**
 	 * Adds a torrent file to this state.
 	 *
@@ -86,6 +115,16 @@ public class TorrentState extends AbstractState implements Iterable<TorrentFile>
 		return this;
 	}
 
+	/**
+	 * Replaces all torrent files of this state with the given torrent files.
+	 *
+	 * @param torrentFiles
+	 *            The new torrent files of this state
+	 */
+	void setTorrentFiles(Collection<TorrentFile> torrentFiles) {
+		files = Lists.newArrayList(torrentFiles);
+	}
+
 	//
 	// ITERABLE METHODS
 	//
@@ -145,6 +184,20 @@ public class TorrentState extends AbstractState implements Iterable<TorrentFile>
 		@JsonProperty
 		private final int leechCount;
 
+		/**
+		 * The ID of this file. It is generated once and stored along with the
+		 * file; files that were stored without an ID generate it on first use.
+		 */
+		@JsonProperty
+		private volatile String id;
+
+		/**
+		 * The time this file was first seen (in milliseconds since the epoch),
+		 * or {@code 0} if it is not known yet.
+		 */
+		@JsonProperty
+		private volatile long firstSeen;
+
 		/**
 		 * No-arg constructor for deserialization.
 		 */
@@ -179,6 +232,7 @@ public class TorrentState extends AbstractState implements Iterable<TorrentFile>
 			this.fileCount = fileCount;
 			this.seedCount = seedCount;
 			this.leechCount = leechCount;
+			this.id = generateId();
 		}
 
 		//
@@ -251,6 +305,52 @@ public class TorrentState extends AbstractState implements Iterable<TorrentFile>
 			return leechCount;
 		}
 
+		/**
+		 * Returns the ID of this file. Two files with the same ID are
+		 * considered to be the same file.
+		 *
+		 * @return The ID of this file
+		 * @see #generateId()
+		 */
+		public String id() {
+			String id = this.id;
+			if (id == null) {
+				id = generateId();
+				this.id = id;
+			}
+			return id;
+		}
+
+		/**
+		 * Returns the time this file was first seen.
+		 *
+		 * @return The time this file was first seen (in milliseconds since the
+		 *         epoch), or {@code 0} if it is not known
+		 */
+		public long firstSeen() {
+			return firstSeen;
+		}
+
+		//
+		// ACTIONS
+		//
+
+		/**
+		 * Sets the time this file was first seen, unless that time is already
+		 * known.
+		 *
+		 * @param time
+		 *            The time this file was first seen (in milliseconds since
+		 *            the epoch)
+		 * @return This torrent file
+		 */
+		public TorrentFile markFirstSeen(long time) {
+			if (firstSeen == 0) {
+				firstSeen = time;
+			}
+			return this;
+		}
+
 		//
 		// PRIVATE METHODS
 		//
@@ -287,15 +387,42 @@ public class TorrentState extends AbstractState implements Iterable<TorrentFile>
 		 * @return The extracted ID, or {@code null} if no ID could be found
 		 */
 		private static String extractId(String magnetUri) {
-			List<NameValuePair> parameters = URLEncodedUtils.parse(magnetUri.substring("magnet:?".length()), Charset.forName("UTF-8"));
-			for (NameValuePair parameter : parameters) {
-				if (parameter.getName().equals("xt")) {
-					return parameter.getValue().toLowerCase();
+			int parameterStart = magnetUri.startsWith("magnet:?") ? "magnet:?".length() : 0;
+			while (parameterStart < magnetUri.length()) {
+				int parameterEnd = magnetUri.indexOf('&', parameterStart);
+				if (parameterEnd == -1) {
+					parameterEnd = magnetUri.length();
+				}
+				if (magnetUri.startsWith("xt=", parameterStart)) {
+					return decode(magnetUri.substring(parameterStart + "xt=".length(), parameterEnd)).toLowerCase();
 				}
+				parameterStart = parameterEnd + 1;
 			}
 			return null;
 		}
 
+		/**
+		 * URL-decodes the given value. Values that can not be decoded are
+		 * returned unchanged.
+		 *
+		 * @param value
+		 *            The value to decode
+		 * @return The decoded value
+		 */
+		private static String decode(String value) {
+			if ((value.indexOf('%') == -1) && (value.indexOf('+') == -1)) {
+				return value;
+			}
+			try {
+				return URLDecoder.decode(value, "UTF-8");
+			} catch (IllegalArgumentException iae1) {
+				return value;
+			} catch (UnsupportedEncodingException uee1) {
+				/* ignore, all JVMs can do UTF-8. */
+				return value;
+			}
+		}
+
 		//
 		// OBJECT METHODS
 		//
@@ -305,7 +432,7 @@ public class TorrentState extends AbstractState implements Iterable<TorrentFile>
 		 */
 		@Override
 		public int hashCode() {
-			return (generateId() != null) ? generateId().hashCode() : 0;
+			return (id() != null) ? id().hashCode() : 0;
 		}
 
 		/**
@@ -316,8 +443,8 @@ public class TorrentState extends AbstractState implements Iterable<TorrentFile>
 			if (!(object instanceof TorrentFile)) {
 				return false;
 			}
-			if (generateId() != null) {
-				return generateId().equals(((TorrentFile) object).generateId());
+			if (id() != null) {
+				return id().equals(((TorrentFile) object).id());
 			}
 			return false;
 		}
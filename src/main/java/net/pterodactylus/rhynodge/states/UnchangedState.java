@@ -0,0 +1,51 @@
+/*
+ * Rhynodge - UnchangedState.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.states;
+
+import net.pterodactylus.rhynodge.Query;
+import net.pterodactylus.rhynodge.State;
+
+/**
+ * {@link State} implementation that signals that the system has not changed
+ * since the last time it was queried. A reaction whose {@link Query} returns
+ * this state keeps its last state; filters, trigger, and action are not run.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class UnchangedState extends AbstractState {
+
+	/**
+	 * Creates a new unchanged state.
+	 */
+	public UnchangedState() {
+		super(true);
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName();
+	}
+
+}
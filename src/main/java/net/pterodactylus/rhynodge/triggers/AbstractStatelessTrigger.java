@@ -0,0 +1,72 @@
+/*
+ * Rhynodge - AbstractStatelessTrigger.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.triggers;
+
+import net.pterodactylus.rhynodge.MergeResult;
+import net.pterodactylus.rhynodge.Reaction;
+import net.pterodactylus.rhynodge.State;
+import net.pterodactylus.rhynodge.StatelessTrigger;
+import net.pterodactylus.rhynodge.Trigger;
+import net.pterodactylus.rhynodge.output.Output;
+
+/**
+ * Base class for {@link StatelessTrigger}s that can also be used as a
+ * {@link Trigger}. The {@link Trigger} methods refer to the result of the last
+ * call to {@link #mergeStates(State, State)}; only {@link #merge(State, State)}
+ * is safe to use concurrently.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public abstract class AbstractStatelessTrigger implements StatelessTrigger, Trigger {
+
+	/** The result of the last call to {@link #mergeStates(State, State)}. */
+	private volatile MergeResult lastMergeResult;
+
+	//
+	// TRIGGER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public State mergeStates(State previousState, State currentState) {
+		MergeResult mergeResult = merge(previousState, currentState);
+		lastMergeResult = mergeResult;
+		return mergeResult.state();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean triggers() {
+		MergeResult mergeResult = lastMergeResult;
+		return (mergeResult != null) && mergeResult.triggered();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Output output(Reaction reaction) {
+		MergeResult mergeResult = lastMergeResult;
+		return (mergeResult != null) ? mergeResult.output(reaction) : null;
+	}
+
+}
@@ -17,45 +17,41 @@
 
 package net.pterodactylus.rhynodge.triggers;
 
+import net.pterodactylus.rhynodge.MergeResult;
 import net.pterodactylus.rhynodge.Reaction;
 import net.pterodactylus.rhynodge.State;
 import net.pterodactylus.rhynodge.Trigger;
 import net.pterodactylus.rhynodge.output.DefaultOutput;
 import net.pterodactylus.rhynodge.output.Output;
 
+import com.google.common.base.Function;
+
 /**
  * {@link Trigger} implementation that always triggers.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
-public class AlwaysTrigger implements Trigger {
+public class AlwaysTrigger extends AbstractStatelessTrigger {
 
-	/**
-	 * {@inheritDoc}
-	 * <p>
-	 * This implementation returns the current state.
-	 */
-	@Override
-	public State mergeStates(State previousState, State currentState) {
-		return currentState;
-	}
+	/** Renders the output of this trigger. */
+	private static final Function<Reaction, Output> OUTPUT_RENDERER = new Function<Reaction, Output>() {
 
-	/**
-	 * {@inheritDoc}
-	 * <p>
-	 * This implementation always returns {@code true}.
-	 */
-	@Override
-	public boolean triggers() {
-		return true;
-	}
+		@Override
+		public Output apply(Reaction reaction) {
+			return new DefaultOutput("true").addText("text/plain", "true").addText("text/html", "<div>true</div>");
+		}
+	};
+
+	//
+	// STATELESSTRIGGER METHODS
+	//
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Output output(Reaction reaction) {
-		return new DefaultOutput("true").addText("text/plain", "true").addText("text/html", "<div>true</div>");
+	public MergeResult merge(State previousState, State currentState) {
+		return new MergeResult(currentState, true, OUTPUT_RENDERER);
 	}
 
 }
@@ -17,13 +17,14 @@
 
 package net.pterodactylus.rhynodge.triggers;
 
+import net.pterodactylus.rhynodge.MergeResult;
 import net.pterodactylus.rhynodge.Reaction;
 import net.pterodactylus.rhynodge.State;
-import net.pterodactylus.rhynodge.Trigger;
 import net.pterodactylus.rhynodge.output.DefaultOutput;
 import net.pterodactylus.rhynodge.output.Output;
 import net.pterodactylus.rhynodge.states.FileState;
 
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 
 /**
@@ -31,40 +32,30 @@ import com.google.common.base.Preconditions;
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
-public class FileExistenceTrigger implements Trigger {
+public class FileExistenceTrigger extends AbstractStatelessTrigger {
 
-	/** Whether a change is triggered. */
-	private boolean triggered;
+	/** Renders the output of this trigger. */
+	private static final Function<Reaction, Output> OUTPUT_RENDERER = new Function<Reaction, Output>() {
+
+		@Override
+		public Output apply(Reaction reaction) {
+			return new DefaultOutput("File appeared/disappeared").addText("text/plain", "File appeared/disappeared").addText("text/html", "<div>File appeared/disappeared</div>");
+		}
+	};
 
 	//
-	// TRIGGER METHODS
+	// STATELESSTRIGGER METHODS
 	//
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public State mergeStates(State previousState, State currentState) {
+	public MergeResult merge(State previousState, State currentState) {
 		Preconditions.checkState(previousState instanceof FileState, "previousState is not a FileState");
 		Preconditions.checkState(currentState instanceof FileState, "currentState is not a FileState");
-		triggered = ((FileState) previousState).exists() != ((FileState) currentState).exists();
-		return currentState;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public boolean triggers() {
-		return triggered;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Output output(Reaction reaction) {
-		return new DefaultOutput("File appeared/disappeared").addText("text/plain", "File appeared/disappeared").addText("text/html", "<div>File appeared/disappeared</div>");
+		boolean triggered = ((FileState) previousState).exists() != ((FileState) currentState).exists();
+		return new MergeResult(currentState, triggered, OUTPUT_RENDERER);
 	}
 
 }
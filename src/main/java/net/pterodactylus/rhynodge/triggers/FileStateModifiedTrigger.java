@@ -19,6 +19,7 @@ package net.pterodactylus.rhynodge.triggers;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import net.pterodactylus.rhynodge.MergeResult;
 import net.pterodactylus.rhynodge.Reaction;
 import net.pterodactylus.rhynodge.State;
 import net.pterodactylus.rhynodge.Trigger;
@@ -26,44 +27,40 @@ import net.pterodactylus.rhynodge.output.DefaultOutput;
 import net.pterodactylus.rhynodge.output.Output;
 import net.pterodactylus.rhynodge.states.FileState;
 
+import com.google.common.base.Function;
+
 /**
  * {@link Trigger} that checks for modifications of a file using the existence,
  * size, and modification time of the {@link FileState}.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
-public class FileStateModifiedTrigger implements Trigger {
+public class FileStateModifiedTrigger extends AbstractStatelessTrigger {
+
+	/** Renders the output of this trigger. */
+	private static final Function<Reaction, Output> OUTPUT_RENDERER = new Function<Reaction, Output>() {
 
-	/** Whether a change was triggered. */
-	private boolean triggered;
+		@Override
+		public Output apply(Reaction reaction) {
+			return new DefaultOutput("File modified").addText("text/plain", "File modified").addText("text/html", "<div>File modified</div>");
+		}
+	};
+
+	//
+	// STATELESSTRIGGER METHODS
+	//
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public State mergeStates(State previousState, State currentState) {
+	public MergeResult merge(State previousState, State currentState) {
 		checkState(currentState instanceof FileState, "currentState is not a FileState but a %s", currentState.getClass());
 		checkState(previousState instanceof FileState, "previousState is not a FileState but a %s", currentState.getClass());
 		FileState currentFileState = (FileState) currentState;
 		FileState previousFileState = (FileState) previousState;
-		triggered = (currentFileState.exists() != previousFileState.exists()) || (currentFileState.size() != previousFileState.size()) || (currentFileState.modificationTime() != previousFileState.modificationTime());
-		return currentState;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public boolean triggers() {
-		return triggered;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Output output(Reaction reaction) {
-		return new DefaultOutput("File modified").addText("text/plain", "File modified").addText("text/html", "<div>File modified</div>");
+		boolean triggered = (currentFileState.exists() != previousFileState.exists()) || (currentFileState.size() != previousFileState.size()) || (currentFileState.modificationTime() != previousFileState.modificationTime());
+		return new MergeResult(currentState, triggered, OUTPUT_RENDERER);
 	}
 
 }
@@ -20,9 +20,12 @@ package net.pterodactylus.rhynodge.triggers;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
+import net.pterodactylus.rhynodge.MergeResult;
 import net.pterodactylus.rhynodge.Reaction;
 import net.pterodactylus.rhynodge.State;
 import net.pterodactylus.rhynodge.Trigger;
@@ -37,7 +40,6 @@ import org.apache.commons.lang3.StringEscapeUtils;
 import com.google.common.base.Function;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
@@ -48,218 +50,290 @@ import com.google.common.collect.Sets;
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
-public class NewEpisodeTrigger implements Trigger {
+public class NewEpisodeTrigger extends AbstractStatelessTrigger implements RetainingTrigger {
 
-	/** All episodes. */
-	private final Collection<Episode> allEpisodes = Sets.newHashSet();
+	/** The retention policy limiting the known episodes. */
+	private volatile RetentionPolicy retentionPolicy = RetentionPolicy.UNLIMITED;
 
-	/** All new episodes. */
-	private final Collection<Episode> newEpisodes = Sets.newHashSet();
-
-	/** All changed episodes. */
-	private final Collection<Episode> changedEpisodes = Sets.newHashSet();
+	//
+	// RETAININGTRIGGER METHODS
+	//
 
-	/** All new torrent files. */
-	private final Collection<TorrentFile> newTorrentFiles = Sets.newHashSet();
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+		this.retentionPolicy = retentionPolicy;
+	}
 
 	//
-	// TRIGGER METHODS
+	// STATELESSTRIGGER METHODS
 	//
 
 	/**
-	 * {@inheritDocs}
+	 * {@inheritDoc}
 	 */
 	@Override
-	public State mergeStates(State previousState, State currentState) {
+	public MergeResult merge(State previousState, State currentState) {
 		checkState(currentState instanceof EpisodeState, "currentState is not a EpisodeState but a %s", currentState.getClass().getName());
 		checkState(previousState instanceof EpisodeState, "previousState is not a EpisodeState but a %s", currentState.getClass().getName());
-		newEpisodes.clear();
-		changedEpisodes.clear();
-		this.allEpisodes.clear();
-		newTorrentFiles.clear();
-		Map<Episode, Episode> allEpisodes = Maps.newHashMap(FluentIterable.from(((EpisodeState) previousState).episodes()).toMap(new Function<Episode, Episode>() {
-
-			@Override
-			public Episode apply(Episode episode) {
-				return episode;
+		Collection<Episode> newEpisodes = Sets.newHashSet();
+		Collection<Episode> changedEpisodes = Sets.newHashSet();
+		Collection<TorrentFile> newTorrentFiles = Sets.newHashSet();
+		/*
+		 * the previous state must not be changed, so its episodes are shared
+		 * and only copied before they are changed.
+		 */
+		Map<Episode, Episode> allEpisodes = Maps.newLinkedHashMap();
+		Set<Episode> ownedEpisodes = Sets.newIdentityHashSet();
+		for (Episode previousEpisode : ((EpisodeState) previousState).episodes()) {
+			Episode episode = previousEpisode;
+			if (episode.firstSeen() == 0) {
+				episode = copyEpisode(previousEpisode).markFirstSeen(previousState.time());
+				ownedEpisodes.add(episode);
 			}
-		}));
+			allEpisodes.put(episode, episode);
+		}
 		for (Episode episode : ((EpisodeState) currentState).episodes()) {
-			if (!allEpisodes.containsKey(episode)) {
-				allEpisodes.put(episode, episode);
+			Episode existingEpisode = allEpisodes.get(episode);
+			if (existingEpisode == null) {
+				allEpisodes.put(episode.markFirstSeen(currentState.time()), episode);
+				ownedEpisodes.add(episode);
 				newEpisodes.add(episode);
+				continue;
 			}
-			Episode existingEpisode = allEpisodes.get(episode);
-			for (TorrentFile torrentFile : Lists.newArrayList(episode.torrentFiles())) {
-				int oldSize = existingEpisode.torrentFiles().size();
-				existingEpisode.addTorrentFile(torrentFile);
-				int newSize = existingEpisode.torrentFiles().size();
-				if (oldSize != newSize) {
-					newTorrentFiles.add(torrentFile);
+			for (TorrentFile torrentFile : episode) {
+				if (existingEpisode.torrentFiles().contains(torrentFile)) {
+					continue;
 				}
-				if (!newEpisodes.contains(existingEpisode) && (oldSize != newSize)) {
-					changedEpisodes.add(existingEpisode);
+				if (!ownedEpisodes.contains(existingEpisode)) {
+					existingEpisode = copyEpisode(existingEpisode);
+					allEpisodes.put(existingEpisode, existingEpisode);
+					ownedEpisodes.add(existingEpisode);
 				}
+				existingEpisode.addTorrentFile(torrentFile);
+				newTorrentFiles.add(torrentFile);
+				changedEpisodes.add(existingEpisode);
 			}
 		}
-		this.allEpisodes.addAll(allEpisodes.values());
-		return new EpisodeState(this.allEpisodes);
+		RetentionPolicy retentionPolicy = this.retentionPolicy;
+		if (!retentionPolicy.unlimited()) {
+			retentionPolicy.retainEpisodes(allEpisodes.keySet(), Sets.newHashSet(((EpisodeState) currentState).episodes()), currentState.time());
+		}
+		return new MergeResult(new EpisodeState(allEpisodes.values()), !newEpisodes.isEmpty() || !changedEpisodes.isEmpty(), new OutputRenderer(Sets.newHashSet(allEpisodes.values()), newEpisodes, changedEpisodes, newTorrentFiles));
 	}
 
+	//
+	// STATIC METHODS
+	//
+
 	/**
-	 * {@inheritDoc}
+	 * Creates a copy of the given episode that can be changed without changing
+	 * the given episode.
+	 *
+	 * @param episode
+	 *            The episode to copy
+	 * @return The copied episode
 	 */
-	@Override
-	public boolean triggers() {
-		return !newEpisodes.isEmpty() || !changedEpisodes.isEmpty();
+	private static Episode copyEpisode(Episode episode) {
+		Episode copiedEpisode = new Episode(episode.season(), episode.episode()).markFirstSeen(episode.firstSeen());
+		for (TorrentFile torrentFile : episode) {
+			copiedEpisode.addTorrentFile(torrentFile);
+		}
+		return copiedEpisode;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Renders the output for the episodes of a single merge.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
 	 */
-	@Override
-	public Output output(Reaction reaction) {
-		String summary;
-		if (!newEpisodes.isEmpty()) {
-			if (!changedEpisodes.isEmpty()) {
-				summary = String.format("%d new and %d changed Torrent(s) for “%s!”", newEpisodes.size(), changedEpisodes.size(), reaction.name());
+	private static class OutputRenderer implements Function<Reaction, Output> {
+
+		/** All episodes. */
+		private final Collection<Episode> allEpisodes;
+
+		/** All new episodes. */
+		private final Collection<Episode> newEpisodes;
+
+		/** All changed episodes. */
+		private final Collection<Episode> changedEpisodes;
+
+		/** All new torrent files. */
+		private final Collection<TorrentFile> newTorrentFiles;
+
+		/**
+		 * Creates a new output renderer.
+		 *
+		 * @param allEpisodes
+		 *            All episodes
+		 * @param newEpisodes
+		 *            All new episodes
+		 * @param changedEpisodes
+		 *            All changed episodes
+		 * @param newTorrentFiles
+		 *            All new torrent files
+		 */
+		public OutputRenderer(Collection<Episode> allEpisodes, Collection<Episode> newEpisodes, Collection<Episode> changedEpisodes, Collection<TorrentFile> newTorrentFiles) {
+			this.allEpisodes = Collections.unmodifiableCollection(allEpisodes);
+			this.newEpisodes = Collections.unmodifiableCollection(newEpisodes);
+			this.changedEpisodes = Collections.unmodifiableCollection(changedEpisodes);
+			this.newTorrentFiles = Collections.unmodifiableCollection(newTorrentFiles);
+		}
+
+		//
+		// FUNCTION METHODS
+		//
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Output apply(Reaction reaction) {
+			String summary;
+			if (!newEpisodes.isEmpty()) {
+				if (!changedEpisodes.isEmpty()) {
+					summary = String.format("%d new and %d changed Torrent(s) for “%s!”", newEpisodes.size(), changedEpisodes.size(), reaction.name());
+				} else {
+					summary = String.format("%d new Torrent(s) for “%s!”", newEpisodes.size(), reaction.name());
+				}
 			} else {
-				summary = String.format("%d new Torrent(s) for “%s!”", newEpisodes.size(), reaction.name());
+				summary = String.format("%d changed Torrent(s) for “%s!”", changedEpisodes.size(), reaction.name());
 			}
-		} else {
-			summary = String.format("%d changed Torrent(s) for “%s!”", changedEpisodes.size(), reaction.name());
+			DefaultOutput output = new DefaultOutput(summary);
+			output.addText("text/plain", generatePlainText(reaction));
+			output.addText("text/html", generateHtmlText(reaction));
+			return output;
 		}
-		DefaultOutput output = new DefaultOutput(summary);
-		output.addText("text/plain", generatePlainText(reaction));
-		output.addText("text/html", generateHtmlText(reaction));
-		return output;
-	}
 
-	//
-	// PRIVATE METHODS
-	//
+		//
+		// PRIVATE METHODS
+		//
 
-	/**
-	 * Generates the plain text trigger output.
-	 *
-	 * @param reaction
-	 *            The reaction that was triggered
-	 * @return The plain text output
-	 */
-	private String generatePlainText(Reaction reaction) {
-		StringBuilder stringBuilder = new StringBuilder();
-		if (!newEpisodes.isEmpty()) {
-			stringBuilder.append(reaction.name()).append(" - New Episodes\n\n");
-			for (Episode episode : newEpisodes) {
-				stringBuilder.append("- ").append(episode.identifier()).append("\n");
-				for (TorrentFile torrentFile : episode) {
-					stringBuilder.append("  - ").append(torrentFile.name()).append(", ").append(torrentFile.size()).append("\n");
-					if ((torrentFile.magnetUri() != null) && (torrentFile.magnetUri().length() > 0)) {
-						stringBuilder.append("    Magnet: ").append(torrentFile.magnetUri()).append("\n");
-					}
-					if ((torrentFile.downloadUri() != null) && (torrentFile.downloadUri().length() > 0)) {
-						stringBuilder.append("    Download: ").append(torrentFile.downloadUri()).append("\n");
+		/**
+		 * Generates the plain text trigger output.
+		 *
+		 * @param reaction
+		 *            The reaction that was triggered
+		 * @return The plain text output
+		 */
+		private String generatePlainText(Reaction reaction) {
+			StringBuilder stringBuilder = new StringBuilder();
+			if (!newEpisodes.isEmpty()) {
+				stringBuilder.append(reaction.name()).append(" - New Episodes\n\n");
+				for (Episode episode : newEpisodes) {
+					stringBuilder.append("- ").append(episode.identifier()).append("\n");
+					for (TorrentFile torrentFile : episode) {
+						stringBuilder.append("  - ").append(torrentFile.name()).append(", ").append(torrentFile.size()).append("\n");
+						if ((torrentFile.magnetUri() != null) && (torrentFile.magnetUri().length() > 0)) {
+							stringBuilder.append("    Magnet: ").append(torrentFile.magnetUri()).append("\n");
+						}
+						if ((torrentFile.downloadUri() != null) && (torrentFile.downloadUri().length() > 0)) {
+							stringBuilder.append("    Download: ").append(torrentFile.downloadUri()).append("\n");
+						}
 					}
 				}
 			}
-		}
-		if (!changedEpisodes.isEmpty()) {
-			stringBuilder.append(reaction.name()).append(" - Changed Episodes\n\n");
-			for (Episode episode : changedEpisodes) {
-				stringBuilder.append("- ").append(episode.identifier()).append("\n");
-				for (TorrentFile torrentFile : episode) {
-					stringBuilder.append("  - ").append(torrentFile.name()).append(", ").append(torrentFile.size()).append("\n");
-					if ((torrentFile.magnetUri() != null) && (torrentFile.magnetUri().length() > 0)) {
-						stringBuilder.append("    Magnet: ").append(torrentFile.magnetUri()).append("\n");
-					}
-					if ((torrentFile.downloadUri() != null) && (torrentFile.downloadUri().length() > 0)) {
-						stringBuilder.append("    Download: ").append(torrentFile.downloadUri()).append("\n");
+			if (!changedEpisodes.isEmpty()) {
+				stringBuilder.append(reaction.name()).append(" - Changed Episodes\n\n");
+				for (Episode episode : changedEpisodes) {
+					stringBuilder.append("- ").append(episode.identifier()).append("\n");
+					for (TorrentFile torrentFile : episode) {
+						stringBuilder.append("  - ").append(torrentFile.name()).append(", ").append(torrentFile.size()).append("\n");
+						if ((torrentFile.magnetUri() != null) && (torrentFile.magnetUri().length() > 0)) {
+							stringBuilder.append("    Magnet: ").append(torrentFile.magnetUri()).append("\n");
+						}
+						if ((torrentFile.downloadUri() != null) && (torrentFile.downloadUri().length() > 0)) {
+							stringBuilder.append("    Download: ").append(torrentFile.downloadUri()).append("\n");
+						}
 					}
 				}
 			}
-		}
-		/* list all known episodes. */
-		stringBuilder.append(reaction.name()).append(" - All Known Episodes\n\n");
-		ImmutableMap<Integer, Collection<Episode>> episodesBySeason = FluentIterable.from(allEpisodes).index(new Function<Episode, Integer>() {
+			/* list all known episodes. */
+			stringBuilder.append(reaction.name()).append(" - All Known Episodes\n\n");
+			ImmutableMap<Integer, Collection<Episode>> episodesBySeason = FluentIterable.from(allEpisodes).index(new Function<Episode, Integer>() {
 
-			@Override
-			public Integer apply(Episode episode) {
-				return episode.season();
-			}
-		}).asMap();
-		for (Entry<Integer, Collection<Episode>> seasonEntry : episodesBySeason.entrySet()) {
-			stringBuilder.append("  Season ").append(seasonEntry.getKey()).append("\n\n");
-			for (Episode episode : Ordering.natural().sortedCopy(seasonEntry.getValue())) {
-				stringBuilder.append("    Episode ").append(episode.episode()).append("\n");
-				for (TorrentFile torrentFile : episode) {
-					stringBuilder.append("      Size: ").append(torrentFile.size());
-					stringBuilder.append(" in ").append(torrentFile.fileCount()).append(" file(s): ");
-					stringBuilder.append(torrentFile.magnetUri());
+				@Override
+				public Integer apply(Episode episode) {
+					return episode.season();
+				}
+			}).asMap();
+			for (Entry<Integer, Collection<Episode>> seasonEntry : episodesBySeason.entrySet()) {
+				stringBuilder.append("  Season ").append(seasonEntry.getKey()).append("\n\n");
+				for (Episode episode : Ordering.natural().sortedCopy(seasonEntry.getValue())) {
+					stringBuilder.append("    Episode ").append(episode.episode()).append("\n");
+					for (TorrentFile torrentFile : episode) {
+						stringBuilder.append("      Size: ").append(torrentFile.size());
+						stringBuilder.append(" in ").append(torrentFile.fileCount()).append(" file(s): ");
+						stringBuilder.append(torrentFile.magnetUri());
+					}
 				}
 			}
-		}
 
-		return stringBuilder.toString();
-	}
+			return stringBuilder.toString();
+		}
 
-	/**
-	 * Generates the HTML trigger output.
-	 *
-	 * @param reaction
-	 *            The reaction that was triggered
-	 * @return The HTML output
-	 */
-	private String generateHtmlText(Reaction reaction) {
-		StringBuilder htmlBuilder = new StringBuilder();
-		htmlBuilder.append("<html><body>\n");
-		/* show all known episodes. */
-		htmlBuilder.append("<table>\n<caption>All Known Episodes</caption>\n");
-		htmlBuilder.append("<thead>\n");
-		htmlBuilder.append("<tr>");
-		htmlBuilder.append("<th>Season</th>");
-		htmlBuilder.append("<th>Episode</th>");
-		htmlBuilder.append("<th>Filename</th>");
-		htmlBuilder.append("<th>Size</th>");
-		htmlBuilder.append("<th>File(s)</th>");
-		htmlBuilder.append("<th>Seeds</th>");
-		htmlBuilder.append("<th>Leechers</th>");
-		htmlBuilder.append("<th>Magnet</th>");
-		htmlBuilder.append("<th>Download</th>");
-		htmlBuilder.append("</tr>\n");
-		htmlBuilder.append("</thead>\n");
-		htmlBuilder.append("<tbody>\n");
-		Episode lastEpisode = null;
-		for (Entry<Integer, Collection<Episode>> seasonEntry : FluentIterable.from(Ordering.natural().reverse().sortedCopy(allEpisodes)).index(Episode.BY_SEASON).asMap().entrySet()) {
-			for (Episode episode : seasonEntry.getValue()) {
-				for (TorrentFile torrentFile : episode) {
-					if (newEpisodes.contains(episode)) {
-						htmlBuilder.append("<tr style=\"color: #008000; font-weight: bold;\">");
-					} else if (newTorrentFiles.contains(torrentFile)) {
-						htmlBuilder.append("<tr style=\"color: #008000;\">");
-					} else {
-						htmlBuilder.append("<tr>");
-					}
-					if ((lastEpisode == null) || !lastEpisode.equals(episode)) {
-						htmlBuilder.append("<td>").append(episode.season()).append("</td><td>").append(episode.episode()).append("</td>");
-					} else {
-						htmlBuilder.append("<td colspan=\"2\"></td>");
+		/**
+		 * Generates the HTML trigger output.
+		 *
+		 * @param reaction
+		 *            The reaction that was triggered
+		 * @return The HTML output
+		 */
+		private String generateHtmlText(Reaction reaction) {
+			StringBuilder htmlBuilder = new StringBuilder();
+			htmlBuilder.append("<html><body>\n");
+			/* show all known episodes. */
+			htmlBuilder.append("<table>\n<caption>All Known Episodes</caption>\n");
+			htmlBuilder.append("<thead>\n");
+			htmlBuilder.append("<tr>");
+			htmlBuilder.append("<th>Season</th>");
+			htmlBuilder.append("<th>Episode</th>");
+			htmlBuilder.append("<th>Filename</th>");
+			htmlBuilder.append("<th>Size</th>");
+			htmlBuilder.append("<th>File(s)</th>");
+			htmlBuilder.append("<th>Seeds</th>");
+			htmlBuilder.append("<th>Leechers</th>");
+			htmlBuilder.append("<th>Magnet</th>");
+			htmlBuilder.append("<th>Download</th>");
+			htmlBuilder.append("</tr>\n");
+			htmlBuilder.append("</thead>\n");
+			htmlBuilder.append("<tbody>\n");
+			Episode lastEpisode = null;
+			for (Entry<Integer, Collection<Episode>> seasonEntry : FluentIterable.from(Ordering.natural().reverse().sortedCopy(allEpisodes)).index(Episode.BY_SEASON).asMap().entrySet()) {
+				for (Episode episode : seasonEntry.getValue()) {
+					for (TorrentFile torrentFile : episode) {
+						if (newEpisodes.contains(episode)) {
+							htmlBuilder.append("<tr style=\"color: #008000; font-weight: bold;\">");
+						} else if (newTorrentFiles.contains(torrentFile)) {
+							htmlBuilder.append("<tr style=\"color: #008000;\">");
+						} else {
+							htmlBuilder.append("<tr>");
+						}
+						if ((lastEpisode == null) || !lastEpisode.equals(episode)) {
+							htmlBuilder.append("<td>").append(episode.season()).append("</td><td>").append(episode.episode()).append("</td>");
+						} else {
+							htmlBuilder.append("<td colspan=\"2\"></td>");
+						}
+						htmlBuilder.append("<td>").append(StringEscapeUtils.escapeHtml4(torrentFile.name())).append("</td>");
+						htmlBuilder.append("<td>").append(StringEscapeUtils.escapeHtml4(torrentFile.size())).append("</td>");
+						htmlBuilder.append("<td>").append(torrentFile.fileCount()).append("</td>");
+						htmlBuilder.append("<td>").append(torrentFile.seedCount()).append("</td>");
+						htmlBuilder.append("<td>").append(torrentFile.leechCount()).append("</td>");
+						htmlBuilder.append("<td><a href=\"").append(StringEscapeUtils.escapeHtml4(torrentFile.magnetUri())).append("\">Link</a></td>");
+						htmlBuilder.append("<td><a href=\"").append(StringEscapeUtils.escapeHtml4(torrentFile.downloadUri())).append("\">Link</a></td>");
+						htmlBuilder.append("</tr>\n");
+						lastEpisode = episode;
 					}
-					htmlBuilder.append("<td>").append(StringEscapeUtils.escapeHtml4(torrentFile.name())).append("</td>");
-					htmlBuilder.append("<td>").append(StringEscapeUtils.escapeHtml4(torrentFile.size())).append("</td>");
-					htmlBuilder.append("<td>").append(torrentFile.fileCount()).append("</td>");
-					htmlBuilder.append("<td>").append(torrentFile.seedCount()).append("</td>");
-					htmlBuilder.append("<td>").append(torrentFile.leechCount()).append("</td>");
-					htmlBuilder.append("<td><a href=\"").append(StringEscapeUtils.escapeHtml4(torrentFile.magnetUri())).append("\">Link</a></td>");
-					htmlBuilder.append("<td><a href=\"").append(StringEscapeUtils.escapeHtml4(torrentFile.downloadUri())).append("\">Link</a></td>");
-					htmlBuilder.append("</tr>\n");
-					lastEpisode = episode;
 				}
 			}
+			htmlBuilder.append("</tbody>\n");
+			htmlBuilder.append("</table>\n");
+			htmlBuilder.append("</body></html>\n");
+			return htmlBuilder.toString();
 		}
-		htmlBuilder.append("</tbody>\n");
-		htmlBuilder.append("</table>\n");
-		htmlBuilder.append("</body></html>\n");
-		return htmlBuilder.toString();
+
 	}
 
 }
@@ -19,80 +19,111 @@ package net.pterodactylus.rhynodge.triggers;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
+import net.pterodactylus.rhynodge.MergeResult;
 import net.pterodactylus.rhynodge.Reaction;
 import net.pterodactylus.rhynodge.State;
 import net.pterodactylus.rhynodge.Trigger;
 import net.pterodactylus.rhynodge.output.DefaultOutput;
 import net.pterodactylus.rhynodge.output.Output;
+import net.pterodactylus.rhynodge.states.SeenFilter;
 import net.pterodactylus.rhynodge.states.TorrentState;
 import net.pterodactylus.rhynodge.states.TorrentState.TorrentFile;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Ordering;
+import com.google.common.base.Function;
 import com.google.common.collect.Sets;
 
 /**
  * {@link Trigger} implementation that is triggered by {@link TorrentFile}s that
  * appear in the current {@link TorrentState} but not in the previous one.
+ * Torrent files that have been removed from the state by the
+ * {@link RetentionPolicy} can be remembered in the {@link SeenFilter} of the
+ * state.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
-public class NewTorrentTrigger implements Trigger {
+public class NewTorrentTrigger extends AbstractStatelessTrigger implements RetainingTrigger {
 
-	/** All known torrents. */
-	private final Set<TorrentFile> allTorrentFiles = Sets.newHashSet();
+	/** The estimated length of the output for a single torrent file. */
+	private static final int ESTIMATED_LENGTH_PER_TORRENT_FILE = 512;
 
-	/** The newly detected torrent files. */
-	private final List<TorrentFile> newTorrentFiles = Lists.newArrayList();
+	/** The retention policy limiting the known torrents. */
+	private volatile RetentionPolicy retentionPolicy = RetentionPolicy.UNLIMITED;
 
 	//
-	// TRIGGER METHODS
+	// RETAININGTRIGGER METHODS
 	//
 
 	/**
-	 * {@inheritDocs}
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+		this.retentionPolicy = retentionPolicy;
+	}
+
+	//
+	// STATELESSTRIGGER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
 	 */
 	@Override
-	public State mergeStates(State previousState, State currentState) {
+	public MergeResult merge(State previousState, State currentState) {
 		checkState(currentState instanceof TorrentState, "currentState is not a TorrentState but a %s", currentState.getClass().getName());
 		checkState(previousState instanceof TorrentState, "previousState is not a TorrentState but a %s", currentState.getClass().getName());
 		TorrentState currentTorrentState = (TorrentState) currentState;
 		TorrentState previousTorrentState = (TorrentState) previousState;
 
-		allTorrentFiles.clear();
-		newTorrentFiles.clear();
-		allTorrentFiles.addAll(previousTorrentState.torrentFiles());
+		RetentionPolicy retentionPolicy = this.retentionPolicy;
+		SeenFilter seenFilter = null;
+		if (retentionPolicy.seenFilterSize() > 0) {
+			seenFilter = (previousTorrentState.seenFilter() != null) ? previousTorrentState.seenFilter() : retentionPolicy.createSeenFilter();
+		}
+
+		/* all known torrents, and the new ones in the order they were detected. */
+		Set<TorrentFile> allTorrentFiles = Sets.newLinkedHashSet();
+		Set<TorrentFile> newTorrentFiles = Sets.newLinkedHashSet();
+		for (TorrentFile torrentFile : previousTorrentState) {
+			if (torrentFile.firstSeen() == 0) {
+				/* copy the torrent file, the previous state must not be changed. */
+				torrentFile = new TorrentFile(torrentFile.name(), torrentFile.size(), torrentFile.magnetUri(), torrentFile.downloadUri(), torrentFile.fileCount(), torrentFile.seedCount(), torrentFile.leechCount()).markFirstSeen(previousTorrentState.time());
+			}
+			allTorrentFiles.add(torrentFile);
+		}
 		for (TorrentFile torrentFile : currentTorrentState) {
-			if (allTorrentFiles.add(torrentFile)) {
-				newTorrentFiles.add(torrentFile);
+			if (allTorrentFiles.contains(torrentFile) || ((seenFilter != null) && seenFilter.mightContain(torrentFile))) {
+				continue;
+			}
+			allTorrentFiles.add(torrentFile);
+			newTorrentFiles.add(torrentFile.markFirstSeen(currentTorrentState.time()));
+		}
+		if (!retentionPolicy.unlimited()) {
+			List<TorrentFile> removedTorrentFiles = retentionPolicy.retainTorrentFiles(allTorrentFiles, Sets.newHashSet(currentTorrentState), currentTorrentState.time());
+			if (seenFilter != null) {
+				boolean copied = false;
+				for (TorrentFile removedTorrentFile : removedTorrentFiles) {
+					if (seenFilter.mightContain(removedTorrentFile)) {
+						continue;
+					}
+					if (!copied) {
+						/* copy the filter, the previous state must not be changed. */
+						seenFilter = seenFilter.copy();
+						copied = true;
+					}
+					seenFilter.add(removedTorrentFile);
+				}
 			}
 		}
 
-		return new TorrentState(allTorrentFiles);
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public boolean triggers() {
-		return !newTorrentFiles.isEmpty();
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	@Override
-	public Output output(Reaction reaction) {
-		DefaultOutput output = new DefaultOutput(String.format("Found %d new Torrent(s) for “%s!”", newTorrentFiles.size(), reaction.name()));
-		output.addText("text/plain", getPlainTextList(reaction));
-		output.addText("text/html", getHtmlTextList(reaction));
-		return output;
+		return new MergeResult(new TorrentState(allTorrentFiles).setSeenFilter(seenFilter), !newTorrentFiles.isEmpty(), new OutputRenderer(allTorrentFiles, newTorrentFiles));
 	}
 
 	//
@@ -102,12 +133,12 @@ public class NewTorrentTrigger implements Trigger {
 	/**
 	 * Generates a plain text list of torrent files.
 	 *
-	 * @param reaction
-	 *            The reaction that was triggered
+	 * @param newTorrentFiles
+	 *            The new torrent files
 	 * @return The generated plain text
 	 */
-	private String getPlainTextList(Reaction reaction) {
-		StringBuilder plainText = new StringBuilder();
+	private static String getPlainTextList(Collection<TorrentFile> newTorrentFiles) {
+		StringBuilder plainText = new StringBuilder(newTorrentFiles.size() * ESTIMATED_LENGTH_PER_TORRENT_FILE);
 		plainText.append("New Torrents:\n\n");
 		for (TorrentFile torrentFile : newTorrentFiles) {
 			plainText.append(torrentFile.name()).append('\n');
@@ -127,12 +158,14 @@ public class NewTorrentTrigger implements Trigger {
 	/**
 	 * Generates an HTML list of the given torrent files.
 	 *
-	 * @param reaction
-	 *            The reaction that was triggered
+	 * @param allTorrentFiles
+	 *            All known torrent files
+	 * @param newTorrentFiles
+	 *            The new torrent files
 	 * @return The generated HTML
 	 */
-	private String getHtmlTextList(Reaction reaction) {
-		StringBuilder htmlBuilder = new StringBuilder();
+	private static String getHtmlTextList(Collection<TorrentFile> allTorrentFiles, Collection<TorrentFile> newTorrentFiles) {
+		StringBuilder htmlBuilder = new StringBuilder(allTorrentFiles.size() * ESTIMATED_LENGTH_PER_TORRENT_FILE);
 		htmlBuilder.append("<html><body>\n");
 		htmlBuilder.append("<table>\n<caption>All Known Torrents</caption>\n");
 		htmlBuilder.append("<thead>\n");
@@ -147,20 +180,14 @@ public class NewTorrentTrigger implements Trigger {
 		htmlBuilder.append("</tr>\n");
 		htmlBuilder.append("</thead>\n");
 		htmlBuilder.append("<tbody>\n");
-		for (TorrentFile torrentFile : sortNewFirst().sortedCopy(allTorrentFiles)) {
-			if (newTorrentFiles.contains(torrentFile)) {
-				htmlBuilder.append("<tr style=\"color: #008000; font-weight: bold;\">");
-			} else {
-				htmlBuilder.append("<tr>");
+		/* new files first, then all other files. */
+		for (TorrentFile torrentFile : newTorrentFiles) {
+			appendHtmlRow(htmlBuilder, torrentFile, true);
+		}
+		for (TorrentFile torrentFile : allTorrentFiles) {
+			if (!newTorrentFiles.contains(torrentFile)) {
+				appendHtmlRow(htmlBuilder, torrentFile, false);
 			}
-			htmlBuilder.append("<td>").append(StringEscapeUtils.escapeHtml4(torrentFile.name())).append("</td>");
-			htmlBuilder.append("<td>").append(StringEscapeUtils.escapeHtml4(torrentFile.size())).append("</td>");
-			htmlBuilder.append("<td>").append(torrentFile.fileCount()).append("</td>");
-			htmlBuilder.append("<td>").append(torrentFile.seedCount()).append("</td>");
-			htmlBuilder.append("<td>").append(torrentFile.leechCount()).append("</td>");
-			htmlBuilder.append("<td><a href=\"").append(StringEscapeUtils.escapeHtml4(torrentFile.magnetUri())).append("\">Link</a></td>");
-			htmlBuilder.append("<td><a href=\"").append(StringEscapeUtils.escapeHtml4(torrentFile.downloadUri())).append("\">Link</a></td>");
-			htmlBuilder.append("</tr>\n");
 		}
 		htmlBuilder.append("</tbody>\n");
 		htmlBuilder.append("</table>\n");
@@ -169,26 +196,91 @@ public class NewTorrentTrigger implements Trigger {
 	}
 
 	/**
-	 * Returns an ordering that sorts torrent files by whether they are new
-	 * (according to {@link #newTorrentFiles}) or not. New files will be sorted
-	 * first.
+	 * Appends a table row for the given torrent file to the given builder.
 	 *
-	 * @return An ordering for “new files first”
+	 * @param htmlBuilder
+	 *            The builder to append the row to
+	 * @param torrentFile
+	 *            The torrent file to append
+	 * @param newTorrentFile
+	 *            {@code true} if the torrent file is new, {@code false}
+	 *            otherwise
 	 */
-	private Ordering<TorrentFile> sortNewFirst() {
-		return new Ordering<TorrentFile>() {
+	private static void appendHtmlRow(StringBuilder htmlBuilder, TorrentFile torrentFile, boolean newTorrentFile) {
+		if (newTorrentFile) {
+			htmlBuilder.append("<tr style=\"color: #008000; font-weight: bold;\">");
+		} else {
+			htmlBuilder.append("<tr>");
+		}
+		htmlBuilder.append("<td>").append(escapeHtml(torrentFile.name())).append("</td>");
+		htmlBuilder.append("<td>").append(escapeHtml(torrentFile.size())).append("</td>");
+		htmlBuilder.append("<td>").append(torrentFile.fileCount()).append("</td>");
+		htmlBuilder.append("<td>").append(torrentFile.seedCount()).append("</td>");
+		htmlBuilder.append("<td>").append(torrentFile.leechCount()).append("</td>");
+		htmlBuilder.append("<td><a href=\"").append(escapeHtml(torrentFile.magnetUri())).append("\">Link</a></td>");
+		htmlBuilder.append("<td><a href=\"").append(escapeHtml(torrentFile.downloadUri())).append("\">Link</a></td>");
+		htmlBuilder.append("</tr>\n");
+	}
 
-			@Override
-			public int compare(TorrentFile leftTorrentFile, TorrentFile rightTorrentFile) {
-				if (newTorrentFiles.contains(leftTorrentFile) && !newTorrentFiles.contains(rightTorrentFile)) {
-					return -1;
-				}
-				if (!newTorrentFiles.contains(leftTorrentFile) && newTorrentFiles.contains(rightTorrentFile)) {
-					return 1;
-				}
-				return 0;
+	/**
+	 * Escapes the given text for use in HTML. Most texts do not contain any
+	 * characters that need to be escaped; they are returned unchanged
+	 * without running the full escaper.
+	 *
+	 * @param text
+	 *            The text to escape (may be {@code null})
+	 * @return The escaped text
+	 */
+	private static String escapeHtml(String text) {
+		if (text == null) {
+			return null;
+		}
+		for (int index = 0; index < text.length(); ++index) {
+			char character = text.charAt(index);
+			if ((character == '&') || (character == '<') || (character == '>') || (character == '"') || (character > 0x7e)) {
+				return StringEscapeUtils.escapeHtml4(text);
 			}
-		};
+		}
+		return text;
+	}
+
+	/**
+	 * Renders the output for the torrent files of a single merge.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class OutputRenderer implements Function<Reaction, Output> {
+
+		/** All known torrent files. */
+		private final Collection<TorrentFile> allTorrentFiles;
+
+		/** The new torrent files. */
+		private final Collection<TorrentFile> newTorrentFiles;
+
+		/**
+		 * Creates a new output renderer.
+		 *
+		 * @param allTorrentFiles
+		 *            All known torrent files
+		 * @param newTorrentFiles
+		 *            The new torrent files
+		 */
+		public OutputRenderer(Set<TorrentFile> allTorrentFiles, Set<TorrentFile> newTorrentFiles) {
+			this.allTorrentFiles = Collections.unmodifiableSet(allTorrentFiles);
+			this.newTorrentFiles = Collections.unmodifiableSet(newTorrentFiles);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Output apply(Reaction reaction) {
+			DefaultOutput output = new DefaultOutput(String.format("Found %d new Torrent(s) for “%s!”", newTorrentFiles.size(), reaction.name()));
+			output.addText("text/plain", getPlainTextList(newTorrentFiles));
+			output.addText("text/html", getHtmlTextList(allTorrentFiles, newTorrentFiles));
+			return output;
+		}
+
 	}
 
 }
@@ -0,0 +1,331 @@
+/*
+ * Rhynodge - RetentionPolicy.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.triggers;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import net.pterodactylus.rhynodge.states.EpisodeState.Episode;
+import net.pterodactylus.rhynodge.states.SeenFilter;
+import net.pterodactylus.rhynodge.states.TorrentState.TorrentFile;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Limits the history a {@link RetainingTrigger} keeps in its merged state.
+ * Entries can be limited by number, by the time they were first seen, and (for
+ * {@link Episode}s) by season. Entries that are contained in the current state
+ * are never removed, as they would otherwise be detected as new again on the
+ * next run.
+ * <p>
+ * Optionally, removed {@link TorrentFile}s are remembered in a {@link SeenFilter}
+ * so that they are not detected as new again even after they have been removed.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class RetentionPolicy {
+
+	/** The default false positive rate of the seen filter. */
+	public static final double DEFAULT_SEEN_FILTER_FALSE_POSITIVE_RATE = 0.001;
+
+	/** A retention policy that keeps everything. */
+	public static final RetentionPolicy UNLIMITED = new RetentionPolicy(0, 0, 0);
+
+	/** Orders episodes by the time they were first seen, oldest first. */
+	private static final Comparator<Episode> BY_FIRST_SEEN = new Comparator<Episode>() {
+
+		@Override
+		public int compare(Episode leftEpisode, Episode rightEpisode) {
+			if (leftEpisode.firstSeen() < rightEpisode.firstSeen()) {
+				return -1;
+			}
+			if (leftEpisode.firstSeen() > rightEpisode.firstSeen()) {
+				return 1;
+			}
+			return leftEpisode.compareTo(rightEpisode);
+		}
+	};
+
+	/** The maximum number of entries to keep, or {@code 0} for no limit. */
+	private final int maxEntries;
+
+	/**
+	 * The maximum age of an entry (in milliseconds), or {@code 0} for no limit.
+	 */
+	private final long maxAge;
+
+	/**
+	 * The number of most recent seasons to keep episodes of, or {@code 0} for
+	 * no limit.
+	 */
+	private final int maxSeasons;
+
+	/**
+	 * The number of removed torrent files the seen filter is sized for, or
+	 * {@code 0} to not use a seen filter.
+	 */
+	private final int seenFilterSize;
+
+	/** The false positive rate the seen filter is sized for. */
+	private final double seenFilterFalsePositiveRate;
+
+	/**
+	 * Creates a new retention policy that does not use a seen filter.
+	 *
+	 * @param maxEntries
+	 *            The maximum number of entries to keep, or {@code 0} for no
+	 *            limit
+	 * @param maxAge
+	 *            The maximum age of an entry, measured from the time it was
+	 *            first seen (in milliseconds), or {@code 0} for no limit
+	 * @param maxSeasons
+	 *            The number of most recent seasons to keep episodes of, or
+	 *            {@code 0} for no limit
+	 */
+	public RetentionPolicy(int maxEntries, long maxAge, int maxSeasons) {
+		this(maxEntries, maxAge, maxSeasons, 0, DEFAULT_SEEN_FILTER_FALSE_POSITIVE_RATE);
+	}
+
+	/**
+	 * Creates a new retention policy.
+	 *
+	 * @param maxEntries
+	 *            The maximum number of entries to keep, or {@code 0} for no
+	 *            limit
+	 * @param maxAge
+	 *            The maximum age of an entry, measured from the time it was
+	 *            first seen (in milliseconds), or {@code 0} for no limit
+	 * @param maxSeasons
+	 *            The number of most recent seasons to keep episodes of, or
+	 *            {@code 0} for no limit
+	 * @param seenFilterSize
+	 *            The number of removed torrent files the seen filter is sized
+	 *            for, or {@code 0} to not use a seen filter
+	 * @param seenFilterFalsePositiveRate
+	 *            The false positive rate the seen filter is sized for
+	 */
+	public RetentionPolicy(int maxEntries, long maxAge, int maxSeasons, int seenFilterSize, double seenFilterFalsePositiveRate) {
+		this.maxEntries = maxEntries;
+		this.maxAge = maxAge;
+		this.maxSeasons = maxSeasons;
+		this.seenFilterSize = seenFilterSize;
+		this.seenFilterFalsePositiveRate = seenFilterFalsePositiveRate;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the maximum number of entries to keep.
+	 *
+	 * @return The maximum number of entries to keep, or {@code 0} for no limit
+	 */
+	public int maxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Returns the maximum age of an entry.
+	 *
+	 * @return The maximum age of an entry (in milliseconds), or {@code 0} for
+	 *         no limit
+	 */
+	public long maxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Returns the number of most recent seasons to keep episodes of.
+	 *
+	 * @return The number of seasons to keep, or {@code 0} for no limit
+	 */
+	public int maxSeasons() {
+		return maxSeasons;
+	}
+
+	/**
+	 * Returns the number of removed torrent files the seen filter is sized
+	 * for.
+	 *
+	 * @return The size of the seen filter, or {@code 0} if no seen filter is
+	 *         used
+	 */
+	public int seenFilterSize() {
+		return seenFilterSize;
+	}
+
+	/**
+	 * Returns the false positive rate the seen filter is sized for.
+	 *
+	 * @return The false positive rate of the seen filter
+	 */
+	public double seenFilterFalsePositiveRate() {
+		return seenFilterFalsePositiveRate;
+	}
+
+	/**
+	 * Returns whether this policy keeps everything.
+	 *
+	 * @return {@code true} if this policy does not remove any entries,
+	 *         {@code false} otherwise
+	 */
+	public boolean unlimited() {
+		return (maxEntries <= 0) && (maxAge <= 0) && (maxSeasons <= 0);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Creates a new, empty seen filter.
+	 *
+	 * @return A new seen filter, or {@code null} if this policy does not use a
+	 *         seen filter
+	 */
+	public SeenFilter createSeenFilter() {
+		return (seenFilterSize > 0) ? new SeenFilter(seenFilterSize, seenFilterFalsePositiveRate) : null;
+	}
+
+	/**
+	 * Removes all torrent files from the given collection that are not
+	 * retained by this policy. The collection has to be ordered by the time
+	 * the files were first seen, oldest first.
+	 *
+	 * @param torrentFiles
+	 *            The torrent files to limit
+	 * @param currentTorrentFiles
+	 *            The torrent files of the current state, which are never
+	 *            removed
+	 * @param now
+	 *            The current time (in milliseconds since the epoch)
+	 * @return The removed torrent files
+	 */
+	public List<TorrentFile> retainTorrentFiles(Collection<TorrentFile> torrentFiles, Collection<TorrentFile> currentTorrentFiles, long now) {
+		List<TorrentFile> removedTorrentFiles = Lists.newArrayList();
+		if (unlimited()) {
+			return removedTorrentFiles;
+		}
+		int excessTorrentFiles = (maxEntries > 0) ? (torrentFiles.size() - maxEntries) : 0;
+		Iterator<TorrentFile> torrentFileIterator = torrentFiles.iterator();
+		while (torrentFileIterator.hasNext()) {
+			TorrentFile torrentFile = torrentFileIterator.next();
+			if ((excessTorrentFiles <= 0) && !tooOld(torrentFile.firstSeen(), now)) {
+				continue;
+			}
+			if (currentTorrentFiles.contains(torrentFile)) {
+				continue;
+			}
+			torrentFileIterator.remove();
+			removedTorrentFiles.add(torrentFile);
+			--excessTorrentFiles;
+		}
+		return removedTorrentFiles;
+	}
+
+	/**
+	 * Removes all episodes from the given collection that are not retained by
+	 * this policy.
+	 *
+	 * @param episodes
+	 *            The episodes to limit
+	 * @param currentEpisodes
+	 *            The episodes of the current state, which are never removed
+	 * @param now
+	 *            The current time (in milliseconds since the epoch)
+	 * @return The removed episodes
+	 */
+	public List<Episode> retainEpisodes(Collection<Episode> episodes, Collection<Episode> currentEpisodes, long now) {
+		List<Episode> removedEpisodes = Lists.newArrayList();
+		if (unlimited()) {
+			return removedEpisodes;
+		}
+		int latestSeason = Integer.MIN_VALUE;
+		for (Episode episode : episodes) {
+			latestSeason = Math.max(latestSeason, episode.season());
+		}
+		List<Episode> sortedEpisodes = Lists.newArrayList(episodes);
+		if (maxEntries > 0) {
+			Collections.sort(sortedEpisodes, BY_FIRST_SEEN);
+		}
+		int excessEpisodes = (maxEntries > 0) ? (episodes.size() - maxEntries) : 0;
+		for (Episode episode : sortedEpisodes) {
+			if ((excessEpisodes <= 0) && !tooOld(episode.firstSeen(), now) && !seasonTooOld(episode.season(), latestSeason)) {
+				continue;
+			}
+			if (currentEpisodes.contains(episode)) {
+				continue;
+			}
+			episodes.remove(episode);
+			removedEpisodes.add(episode);
+			--excessEpisodes;
+		}
+		return removedEpisodes;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns whether an entry that was first seen at the given time is older
+	 * than the maximum age of this policy.
+	 *
+	 * @param firstSeen
+	 *            The time the entry was first seen
+	 * @param now
+	 *            The current time
+	 * @return {@code true} if the entry is too old to be retained,
+	 *         {@code false} otherwise
+	 */
+	private boolean tooOld(long firstSeen, long now) {
+		return (maxAge > 0) && (firstSeen > 0) && ((now - firstSeen) > maxAge);
+	}
+
+	/**
+	 * Returns whether the given season is older than the seasons retained by
+	 * this policy.
+	 *
+	 * @param season
+	 *            The season to check
+	 * @param latestSeason
+	 *            The latest known season
+	 * @return {@code true} if episodes of the season are not retained,
+	 *         {@code false} otherwise
+	 */
+	private boolean seasonTooOld(int season, int latestSeason) {
+		return (maxSeasons > 0) && (season <= (latestSeason - maxSeasons));
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s[maxEntries=%d,maxAge=%d,maxSeasons=%d,seenFilterSize=%d,seenFilterFalsePositiveRate=%s]", getClass().getSimpleName(), maxEntries, maxAge, maxSeasons, seenFilterSize, seenFilterFalsePositiveRate);
+	}
+
+}
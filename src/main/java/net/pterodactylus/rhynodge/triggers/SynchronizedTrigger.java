@@ -0,0 +1,75 @@
+/*
+ * Rhynodge - SynchronizedTrigger.java - Copyright © 2013 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.rhynodge.triggers;
+
+import net.pterodactylus.rhynodge.MergeResult;
+import net.pterodactylus.rhynodge.Reaction;
+import net.pterodactylus.rhynodge.State;
+import net.pterodactylus.rhynodge.StatelessTrigger;
+import net.pterodactylus.rhynodge.Trigger;
+import net.pterodactylus.rhynodge.output.Output;
+
+import com.google.common.base.Functions;
+
+/**
+ * Adapter that lets a {@link Trigger} that keeps the results of a run in its
+ * fields be used as a {@link StatelessTrigger}. All runs are serialized on the
+ * trigger, and the output is rendered for the adapter’s reaction while the
+ * results of the run are still in place.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SynchronizedTrigger implements StatelessTrigger {
+
+	/** The trigger to adapt. */
+	private final Trigger trigger;
+
+	/** The reaction to render the output for. */
+	private final Reaction reaction;
+
+	/**
+	 * Creates a new synchronized trigger.
+	 *
+	 * @param trigger
+	 *            The trigger to adapt
+	 * @param reaction
+	 *            The reaction to render the output for
+	 */
+	public SynchronizedTrigger(Trigger trigger, Reaction reaction) {
+		this.trigger = trigger;
+		this.reaction = reaction;
+	}
+
+	//
+	// STATELESSTRIGGER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public MergeResult merge(State previousState, State currentState) {
+		synchronized (trigger) {
+			State mergedState = trigger.mergeStates(previousState, currentState);
+			boolean triggered = trigger.triggers();
+			Output output = triggered ? trigger.output(reaction) : null;
+			return new MergeResult(mergedState, triggered, Functions.constant(output));
+		}
+	}
+
+}